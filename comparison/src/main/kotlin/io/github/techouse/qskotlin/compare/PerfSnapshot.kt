@@ -2,10 +2,21 @@ package io.github.techouse.qskotlin.compare
 
 import com.sun.management.ThreadMXBean
 import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.decodeAll
+import io.github.techouse.qskotlin.decodeInto
 import io.github.techouse.qskotlin.encode
+import io.github.techouse.qskotlin.models.AccessLogDecoder
+import io.github.techouse.qskotlin.models.AllowlistFilter
+import io.github.techouse.qskotlin.models.DecodeBuffer
 import io.github.techouse.qskotlin.models.DecodeOptions
 import io.github.techouse.qskotlin.models.EncodeOptions
+import io.github.techouse.qskotlin.models.FunctionFilter
+import io.github.techouse.qskotlin.models.PathFilter
+import io.github.techouse.qskotlin.models.TypeWriters
 import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.util.UUID
 
 private data class PerfResult(val msPerOp: Double, val allocBytesPerOp: Long?)
 
@@ -132,12 +143,55 @@ private fun measureEncode(depth: Int, iterations: Int): Pair<PerfResult, Int> {
     return result to outLength
 }
 
+private fun measureEncodeWide(
+    count: Int,
+    iterations: Int,
+    parallel: Boolean = false,
+): Pair<PerfResult, Int> {
+    val payload =
+        (0 until count).associate {
+            "k$it" to mapOf("id" to it, "tags" to listOf("a b", "c&d"), "name" to "v$it")
+        }
+    val options = EncodeOptions(parallel = parallel, parallelThreshold = 1)
+
+    repeat(5) { encode(payload, options) }
+
+    val times = ArrayList<Double>(7)
+    val allocs = ArrayList<Long>(7)
+    var outLength = 0
+
+    repeat(7) {
+        runGcPause()
+        val before = currentThreadAllocatedBytesOrNull()
+        val start = System.nanoTime()
+        var encoded = ""
+        repeat(iterations) { encoded = encode(payload, options) }
+        val elapsed = System.nanoTime() - start
+        val after = currentThreadAllocatedBytesOrNull()
+        outLength = encoded.length
+
+        times += (elapsed / 1_000_000.0) / iterations
+        if (before != null && after != null) {
+            allocs += (after - before) / iterations
+        }
+    }
+
+    val result =
+        PerfResult(
+            msPerOp = median(times),
+            allocBytesPerOp = allocs.takeIf { it.isNotEmpty() }?.let { median(it) },
+        )
+
+    return result to outLength
+}
+
 private fun measureDecode(
     count: Int,
     commaLists: Boolean,
     utf8Sentinel: Boolean,
     valueLen: Int,
     iterations: Int,
+    parallel: Boolean = false,
 ): Pair<PerfResult, Int> {
     val query = buildQuery(count, commaLists, utf8Sentinel, valueLen)
     val options =
@@ -149,6 +203,8 @@ private fun measureDecode(
             interpretNumericEntities = false,
             charsetSentinel = utf8Sentinel,
             ignoreQueryPrefix = false,
+            parallel = parallel,
+            parallelThreshold = 1,
         )
 
     repeat(5) { decode(query, options) }
@@ -182,6 +238,36 @@ private fun measureDecode(
     return result to keyCount
 }
 
+/**
+ * Runs [op] [warmup] times, then times [iterations] more calls and prints one `us/op | B/op` row
+ * labelled [label].
+ */
+private fun measureOps(label: String, warmup: Int, iterations: Int, op: () -> Unit): PerfResult {
+    repeat(warmup) { op() }
+    runGcPause()
+    val before = currentThreadAllocatedBytesOrNull()
+    val start = System.nanoTime()
+    repeat(iterations) { op() }
+    val elapsed = System.nanoTime() - start
+    val after = currentThreadAllocatedBytesOrNull()
+
+    val result =
+        PerfResult(
+            msPerOp = elapsed / 1_000_000.0 / iterations,
+            allocBytesPerOp =
+                if (before != null && after != null) (after - before) / iterations else null,
+        )
+    println(
+        "  %s: %10.3f us/op | %s"
+            .format(
+                label,
+                result.msPerOp * 1_000,
+                result.allocBytesPerOp?.let { "%9d B/op".format(it) } ?: "n/a",
+            )
+    )
+    return result
+}
+
 private fun formatAllocMib(bytes: Long?): String {
     if (bytes == null) return "n/a"
     return "%8.2f MiB/op".format(bytes / (1024.0 * 1024.0))
@@ -228,4 +314,224 @@ internal fun runPerfSnapshot() {
                 )
         )
     }
+
+    val cores = Runtime.getRuntime().availableProcessors()
+    println("Decode scaling (sequential vs parallel, comma=true, len=40, $cores cores):")
+    listOf(1_000 to 16, 4_000 to 8, 8_000 to 8, 16_000 to 4, 32_000 to 4, 64_000 to 2).forEach {
+        (count, iterations) ->
+        val (sequential, _) = measureDecode(count, true, false, 40, iterations)
+        val (parallel, keyCount) = measureDecode(count, true, false, 40, iterations, true)
+        println(
+            "  count=%6d: sequential %8.3f ms/op | parallel %8.3f ms/op | x%.2f | keys=%d"
+                .format(
+                    count,
+                    sequential.msPerOp,
+                    parallel.msPerOp,
+                    sequential.msPerOp / parallel.msPerOp,
+                    keyCount,
+                )
+        )
+    }
+
+    println("Encode scaling (sequential vs parallel, wide root map):")
+    listOf(1_000 to 16, 4_000 to 8, 16_000 to 4, 64_000 to 2).forEach { (count, iterations) ->
+        val (sequential, _) = measureEncodeWide(count, iterations)
+        val (parallel, outLength) = measureEncodeWide(count, iterations, true)
+        println(
+            "  count=%6d: sequential %8.3f ms/op | parallel %8.3f ms/op | x%.2f | len=%d"
+                .format(
+                    count,
+                    sequential.msPerOp,
+                    parallel.msPerOp,
+                    sequential.msPerOp / parallel.msPerOp,
+                    outLength,
+                )
+        )
+    }
+
+    println("Batch decode (20000 access-log style queries):")
+    val queries =
+        (0 until 20_000).map { "filter[status]=open&filter[tag][]=t${it % 16}&page=$it&sort=asc" }
+    repeat(3) {
+        queries.forEach { decode(it) }
+        decodeAll(queries)
+    }
+    val loopStart = System.nanoTime()
+    queries.forEach { decode(it) }
+    val loopSeconds = (System.nanoTime() - loopStart) / 1e9
+    val stats = decodeAll(queries, null, null) { _, _ -> }
+    println(
+        "  decode loop %10.0f queries/s | decodeAll %10.0f queries/s"
+            .format(queries.size / loopSeconds, stats.throughputPerSecond)
+    )
+
+    println("Access log scan (long values, 64 MiB region):")
+    val log = Files.createTempFile("perf-access", ".log")
+    try {
+        val value = "x".repeat(1_500)
+        Files.newBufferedWriter(log).use { out ->
+            repeat(20_000) {
+                out.write("10.0.0.${it % 255} - - \"GET /search?q=$value&page=$it HTTP/1.1\" 200\n")
+            }
+        }
+        val logs = AccessLogDecoder()
+        repeat(3) { logs.decodePathTables(log) { _, _ -> } }
+        val samples = (0 until 7).map { logs.decodePathTables(log) { _, _ -> }.throughputPerSecond }
+        println(
+            "  %d lines, %d MiB: %10.0f queries/s"
+                .format(20_000, Files.size(log) shr 20, samples.sorted()[samples.size / 2])
+        )
+    } finally {
+        Files.deleteIfExists(log)
+    }
+
+    println("Recycled decode (fixed-shape query, 100000 ops):")
+    val fixed = "action=list&filter[status]=open&filter[tags][]=a&filter[tags][]=b&page=2&sort=asc"
+    val buffer = DecodeBuffer()
+    listOf<Pair<String, () -> Unit>>(
+            "decode    " to { decode(fixed) },
+            "decodeInto" to { decodeInto(fixed, buffer) },
+        )
+        .forEach { (name, op) -> measureOps(name, 20_000, 100_000, op) }
+
+    println("Acyclic encode (wide shallow map, 2000 keys, 200 ops):")
+    val shallow =
+        (0 until 2_000).associate {
+            "k$it" to mapOf("id" to it, "tags" to listOf("a", "b"), "meta" to mapOf("x" to "y"))
+        }
+    listOf(
+            "tracked " to EncodeOptions(),
+            "acyclic " to EncodeOptions(assumeAcyclic = true),
+        )
+        .forEach { (name, options) -> measureOps(name, 100, 200) { encode(shallow, options) } }
+
+    println("Flat map encode (20 scalar keys, 100000 ops):")
+    val flatMap = (0 until 20).associate { "key$it" to if (it % 2 == 0) "value $it" else it }
+    listOf(
+            "fast path" to EncodeOptions(),
+            "traversal" to EncodeOptions(filter = FunctionFilter { _, value -> value }),
+        )
+        .forEach { (name, options) ->
+            measureOps(name, 20_000, 100_000) { encode(flatMap, options) }
+        }
+
+    println("Indexed list keys (10000 elements under a nested prefix, 200 ops):")
+    val rows = mapOf("report" to mapOf("rows" to (0 until 10_000).map { "r$it" }))
+    // Any custom encoder, even one delegating to the default, encodes every full key path.
+    val defaults = EncodeOptions()
+    listOf(
+            "cached prefix " to defaults,
+            "full-path keys" to
+                EncodeOptions(
+                    encoder = { value, charset, format ->
+                        defaults.getEncoder(value, charset, format)
+                    }
+                ),
+        )
+        .forEach { (name, options) -> measureOps(name, 100, 200) { encode(rows, options) } }
+
+    println("Binary values (4 KiB UTF-8 token, 20000 ops):")
+    val tokenText = "abcdefghijklmnopqrstuvwxyz0123456789+/=é".repeat(100)
+    val token = tokenText.toByteArray(Charsets.UTF_8)
+    listOf<Pair<String, () -> Unit>>(
+            "ByteArray " to { encode(mapOf("sig" to token)) },
+            "ByteBuffer" to { encode(mapOf("sig" to ByteBuffer.wrap(token))) },
+            "String    " to { encode(mapOf("sig" to tokenText)) },
+        )
+        .forEach { (name, op) -> measureOps(name, 20_000, 20_000, op) }
+
+    println("Type writers (nested map, 1000 leaves, 2000 ops):")
+    val builtInLeaves =
+        (0 until 100).associate { row ->
+            "r$row" to (0 until 10).associate { "f$it" to if (it % 2 == 0) "v$it" else it }
+        }
+    val uuidLeaves =
+        (0 until 100).associate { row ->
+            "r$row" to (0 until 10).associate { "f$it" to UUID(row.toLong(), it.toLong()) }
+        }
+    val uuidWriters =
+        TypeWriters.builder()
+            .register<UUID> { value, out -> out.append(value.toString(), 0, 8) }
+            .build()
+    listOf(
+            "built-in, no registry " to (builtInLeaves to EncodeOptions()),
+            "built-in, registry    " to (builtInLeaves to EncodeOptions(typeWriters = uuidWriters)),
+            "UUID, toString()      " to (uuidLeaves to EncodeOptions()),
+            "UUID, registry        " to (uuidLeaves to EncodeOptions(typeWriters = uuidWriters)),
+        )
+        .forEach { (name, case) ->
+            val (data, options) = case
+            measureOps(name, 2_000, 2_000) { encode(data, options) }
+        }
+
+    println("Path filter (nested map, 1000 leaves, 2000 ops):")
+    val nestedFilterData =
+        mapOf(
+            "users" to
+                (0 until 100).associate { user ->
+                    "u$user" to (0 until 10).associate { "f$it" to "v$it" }
+                }
+        )
+    listOf(
+            "FunctionFilter" to
+                EncodeOptions(
+                    filter =
+                        FunctionFilter { path, value ->
+                            if (path.endsWith("[password]")) null else value
+                        }
+                ),
+            "PathFilter    " to
+                EncodeOptions(
+                    filter =
+                        PathFilter { path, value ->
+                            if (path.endsWith("[password]")) null else value
+                        }
+                ),
+        )
+        .forEach { (name, options) ->
+            measureOps(name, 2_000, 2_000) { encode(nestedFilterData, options) }
+        }
+
+    println("Allowlist filter (3 paths over 10000 records, 200 ops):")
+    val records =
+        mapOf(
+            "user" to mapOf("name" to "n", "email" to "e"),
+            "records" to (0 until 10_000).map { mapOf("id" to it, "body" to "b$it") },
+        )
+    listOf(
+            "no filter      " to EncodeOptions(),
+            "AllowlistFilter" to
+                EncodeOptions(filter = AllowlistFilter("user.name", "records[0].id", "records[9]")),
+        )
+        .forEach { (name, options) ->
+            // The filtered encode is cheap; warm it up long enough for the JIT to compile it.
+            val warmup = if (options.filter == null) 200 else 50_000
+            measureOps(name, warmup, 200) { encode(records, options) }
+        }
+
+    println("Generated values (10000 ids, 500 ops):")
+    val ids = (0 until 10_000).toList()
+    val idSet = LinkedHashSet(ids)
+    listOf<Pair<String, () -> Any>>(
+            "List    " to { ids },
+            "Set     " to { idSet },
+            "Sequence" to { (0 until 10_000).asSequence() },
+        )
+        .forEach { (name, values) ->
+            measureOps(name, 500, 500) { encode(mapOf("ids" to values())) }
+        }
+
+    println("Primitive arrays (1000 numbers, 20000 ops):")
+    val intValues = IntArray(1_000) { it * 7 }
+    val boxedValues = intValues.toList()
+    val doubleValues = DoubleArray(1_000) { it / 4.0 }
+    listOf<Pair<String, Any>>(
+            "List<Int>  " to boxedValues,
+            "IntArray   " to intValues,
+            "DoubleArray" to doubleValues,
+        )
+        .forEach { (name, values) ->
+            val data = mapOf("ids" to values)
+            measureOps(name, 20_000, 20_000) { encode(data) }
+        }
 }
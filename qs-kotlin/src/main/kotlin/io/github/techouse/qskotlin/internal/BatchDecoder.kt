@@ -0,0 +1,85 @@
+package io.github.techouse.qskotlin.internal
+
+import io.github.techouse.qskotlin.models.BatchDecodeStats
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.github.techouse.qskotlin.models.StringPool
+import java.time.Duration
+import java.util.ArrayDeque
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Drives `QS.decodeAll`: decodes inputs in fixed-size chunks on an [Executor] and delivers the
+ * results to a consumer in input order.
+ *
+ * Options are resolved once per batch. Every chunk shares one [KeySegmentCache] and, unless the
+ * caller configured their own, one [StringPool]. At most a few chunks per worker are in flight, so
+ * an unbounded input is streamed in constant memory.
+ */
+internal object BatchDecoder {
+    private const val CHUNK_SIZE = 256
+
+    fun decodeAll(
+        inputs: Iterator<String?>,
+        options: DecodeOptions,
+        executor: Executor?,
+        consumer: (index: Long, result: Map<String, Any?>) -> Unit,
+    ): BatchDecodeStats {
+        val shared =
+            if (options.stringPool == null) options.copy(stringPool = StringPool()) else options
+        val segmentCache = KeySegmentCache(shared)
+        val pool = executor ?: ForkJoinPool.commonPool()
+        val window = 2 * maxOf(1, (pool as? ForkJoinPool)?.parallelism ?: cpuCount())
+
+        val pending = ArrayDeque<CompletableFuture<Array<Map<String, Any?>>>>(window)
+        var index = 0L
+        val start = System.nanoTime()
+
+        fun deliver(chunk: CompletableFuture<Array<Map<String, Any?>>>) {
+            val results =
+                try {
+                    chunk.join()
+                } catch (e: CompletionException) {
+                    throw e.cause ?: e
+                }
+            for (result in results) consumer(index++, result)
+        }
+
+        try {
+            while (inputs.hasNext()) {
+                val chunk = ArrayList<String?>(CHUNK_SIZE)
+                while (chunk.size < CHUNK_SIZE && inputs.hasNext()) chunk.add(inputs.next())
+
+                pending.addLast(
+                    CompletableFuture.supplyAsync(
+                        { Array(chunk.size) { i -> decodeOne(chunk[i], shared, segmentCache) } },
+                        pool,
+                    )
+                )
+                if (pending.size >= window) deliver(pending.removeFirst())
+            }
+            while (pending.isNotEmpty()) deliver(pending.removeFirst())
+        } finally {
+            pending.forEach { it.cancel(false) }
+        }
+
+        return BatchDecodeStats(index, Duration.ofNanos(System.nanoTime() - start))
+    }
+
+    /** Decode one input exactly like `QS.decode`, sharing the batch [segmentCache]. */
+    fun decodeOne(
+        input: String?,
+        options: DecodeOptions,
+        segmentCache: KeySegmentCache,
+    ): Map<String, Any?> {
+        if (input.isNullOrEmpty()) return emptyMap()
+
+        val budget = DecodeBudget.of(options)
+        val tempObj = Decoder.parseQueryStringValues(input, options, budget)
+        return Decoder.assemble(tempObj, options, decodeFromString = true, budget, segmentCache)
+    }
+
+    private fun cpuCount(): Int = Runtime.getRuntime().availableProcessors()
+}
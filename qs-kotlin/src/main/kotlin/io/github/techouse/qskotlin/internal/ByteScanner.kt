@@ -0,0 +1,66 @@
+package io.github.techouse.qskotlin.internal
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Word-at-a-time (SWAR) scanning over raw bytes.
+ *
+ * Each step reads 8 bytes as one `Long` and tests all of them with a few arithmetic operations
+ * instead of 8 compare-and-branch iterations. Buffers must use [ByteOrder.LITTLE_ENDIAN] so that
+ * the lowest set flag marks the first matching byte.
+ */
+internal object ByteScanner {
+    private const val ONES = 0x0101010101010101L
+    private const val HIGHS = -0x7f7f7f7f7f7f7f80L // 0x8080808080808080
+
+    /**
+     * Sets the high bit of the lowest zero byte of [word] (bytes above it may be flagged spuriously
+     * because of the borrow); `0` when no byte is zero.
+     */
+    private fun zeroBytes(word: Long): Long = (word - ONES) and word.inv() and HIGHS
+
+    /** Index of the first [target] byte in `buffer[from, to)`, or `-1`. */
+    fun indexOf(buffer: ByteBuffer, target: Byte, from: Int, to: Int): Int {
+        require(buffer.order() == ByteOrder.LITTLE_ENDIAN) { "Buffer must be little-endian" }
+        val pattern = ONES * (target.toLong() and 0xFF)
+        var i = from
+        while (i <= to - Long.SIZE_BYTES) {
+            val found = zeroBytes(buffer.getLong(i) xor pattern)
+            if (found != 0L) return i + (java.lang.Long.numberOfTrailingZeros(found) ushr 3)
+            i += Long.SIZE_BYTES
+        }
+        while (i < to) {
+            if (buffer.get(i) == target) return i
+            i++
+        }
+        return -1
+    }
+
+    /** Index of the first occurrence of [needle] in `buffer[from, to)`, or `-1`. */
+    fun indexOf(buffer: ByteBuffer, needle: ByteArray, from: Int, to: Int): Int {
+        val last = to - needle.size
+        var i = from
+        while (i <= last) {
+            i = indexOf(buffer, needle[0], i, last + 1)
+            if (i < 0) return -1
+            if ((1 until needle.size).all { buffer.get(i + it) == needle[it] }) return i
+            i++
+        }
+        return -1
+    }
+
+    /** `true` when every byte of `buffer[from, to)` is 7-bit ASCII. */
+    fun isAscii(buffer: ByteBuffer, from: Int, to: Int): Boolean {
+        var i = from
+        while (i <= to - Long.SIZE_BYTES) {
+            if (buffer.getLong(i) and HIGHS != 0L) return false
+            i += Long.SIZE_BYTES
+        }
+        while (i < to) {
+            if (buffer.get(i) < 0) return false
+            i++
+        }
+        return true
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.techouse.qskotlin.internal
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Thread-safe per-class memo of [compute], used where `java.lang.ClassValue` would be the natural
+ * choice but is unavailable (Android before API 34).
+ *
+ * Entries are never evicted and hold their classes strongly, so only use it for small, bounded
+ * sets of classes such as enum types or the leaf classes a `TypeWriters` instance is asked about.
+ */
+internal class ClassCache<T : Any>(private val compute: (Class<*>) -> T) {
+    private val values = ConcurrentHashMap<Class<*>, T>()
+
+    fun get(type: Class<*>): T = values[type] ?: values.computeIfAbsent(type, compute)
+}
@@ -0,0 +1,74 @@
+package io.github.techouse.qskotlin.internal
+
+import io.github.techouse.qskotlin.models.CancellationToken
+import io.github.techouse.qskotlin.models.DeadlineExceededException
+import java.time.Duration
+import java.util.concurrent.CancellationException
+
+/**
+ * Cooperative time budget and cancellation check for a single decode or encode.
+ *
+ * Hot loops call [tick] once per iteration; only every [CHECK_INTERVAL]-th call (and the first)
+ * reads the clock and the [CancellationToken], so the overhead stays negligible.
+ */
+internal class Deadline
+private constructor(
+    private val budget: Duration?,
+    private val token: CancellationToken?,
+    private val deadlineNanos: Long,
+) {
+    private var ticks = CHECK_INTERVAL - 1
+
+    /** Count one unit of work and run [check] at the configured interval. */
+    fun tick() {
+        if (++ticks >= CHECK_INTERVAL) {
+            ticks = 0
+            check()
+        }
+    }
+
+    /**
+     * Thread-safe variant of [tick] for parallel loops: runs [check] when [index] is a multiple of
+     * the check interval, without touching the shared tick counter.
+     */
+    fun tickAt(index: Int) {
+        if (index % CHECK_INTERVAL == 0) check()
+    }
+
+    /**
+     * Returns a deadline with the same expiry and token but its own tick counter, for work handed
+     * to another thread.
+     */
+    fun fork(): Deadline = Deadline(budget, token, deadlineNanos)
+
+    /**
+     * @throws CancellationException if the token has been cancelled.
+     * @throws DeadlineExceededException if the time budget has elapsed.
+     */
+    fun check() {
+        if (token != null && token.isCancelled) {
+            throw CancellationException("Operation was cancelled.")
+        }
+        if (budget != null && System.nanoTime() - deadlineNanos > 0) {
+            throw DeadlineExceededException("Time budget of ${budget.toMillis()} ms exceeded.")
+        }
+    }
+
+    companion object {
+        private const val CHECK_INTERVAL = 256
+
+        /** Returns a running deadline, or `null` when neither a budget nor a token is set. */
+        fun of(budget: Duration?, token: CancellationToken?): Deadline? =
+            when {
+                budget != null ->
+                    Deadline(budget, token, System.nanoTime() + saturatedNanos(budget))
+                token != null -> Deadline(null, token, 0L)
+                else -> null
+            }
+
+        private val MAX_BUDGET: Duration = Duration.ofNanos(Long.MAX_VALUE / 4)
+
+        private fun saturatedNanos(budget: Duration): Long =
+            if (budget > MAX_BUDGET) MAX_BUDGET.toNanos() else budget.toNanos()
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.techouse.qskotlin.internal
+
+import io.github.techouse.qskotlin.models.DecodeOptions
+
+/**
+ * Per-call accounting for [DecodeOptions.maxDecodedBytes], [DecodeOptions.maxNodes],
+ * [DecodeOptions.timeBudget] and [DecodeOptions.cancellationToken].
+ *
+ * One instance is threaded through a single decode. A charge that would exceed a memory budget is
+ * not applied: it throws when [DecodeOptions.throwOnLimitExceeded] is set and returns `false`
+ * otherwise, so the caller can drop the offending input. [tick] enforces the time budget.
+ */
+internal class DecodeBudget private constructor(private val options: DecodeOptions) {
+    private var bytes = 0L
+    private var nodes = 0L
+    private val deadline = Deadline.of(options.timeBudget, options.cancellationToken)
+
+    /**
+     * `true` once a structural charge ([chargeNodes]) has failed; the caller then stops building
+     * and every later charge fails.
+     */
+    var exhausted = false
+        private set
+
+    /**
+     * Charge one decoded pair: 2 bytes per key and value character, plus one node for the value
+     * and one per element when the value is a List.
+     */
+    fun chargePair(key: String, value: Any?): Boolean {
+        var chars = key.length.toLong()
+        var leaves = 1L
+        if (value is String) {
+            chars += value.length
+        } else if (value is Iterable<*>) {
+            for (item in value) {
+                if (item is String) chars += item.length
+                leaves++
+            }
+        }
+
+        if (bytes + chars * 2 > options.maxDecodedBytes) {
+            val limit = options.maxDecodedBytes
+            return exceed("Decoded size limit exceeded. Only $limit bytes allowed.")
+        }
+        if (nodes + leaves > options.maxNodes) return exceed(nodeLimitMessage())
+
+        bytes += chars * 2
+        nodes += leaves
+        return true
+    }
+
+    /** Charge [count] nodes (containers or list slots) built while nesting or merging. */
+    fun chargeNodes(count: Int): Boolean {
+        if (exhausted) return false
+        if (nodes + count <= options.maxNodes) {
+            nodes += count
+            return true
+        }
+
+        exhausted = true
+        return exceed(nodeLimitMessage())
+    }
+
+    /** Count one loop iteration against the time budget and cancellation token. */
+    fun tick() {
+        deadline?.tick()
+    }
+
+    /**
+     * Time budget check for the parallel stages, safe to call from any thread; [index] is the
+     * element being processed. Memory budgets are only charged sequentially.
+     */
+    fun tickAt(index: Int) {
+        deadline?.tickAt(index)
+    }
+
+    private fun nodeLimitMessage(): String {
+        val limit = options.maxNodes
+        return "Node limit exceeded. Only $limit node${if (limit == 1) "" else "s"} allowed."
+    }
+
+    private fun exceed(message: String): Boolean {
+        if (options.throwOnLimitExceeded) throw IndexOutOfBoundsException(message)
+        return false
+    }
+
+    companion object {
+        /** Returns a fresh budget, or `null` when [options] sets no memory or time limits. */
+        fun of(options: DecodeOptions): DecodeBudget? =
+            if (
+                options.maxDecodedBytes == Long.MAX_VALUE &&
+                    options.maxNodes == Int.MAX_VALUE &&
+                    options.timeBudget == null &&
+                    options.cancellationToken == null
+            ) {
+                null
+            } else {
+                DecodeBudget(options)
+            }
+    }
+}
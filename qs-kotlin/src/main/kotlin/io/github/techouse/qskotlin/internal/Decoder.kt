@@ -5,11 +5,13 @@ import io.github.techouse.qskotlin.enums.Sentinel
 import io.github.techouse.qskotlin.internal.Decoder.dotToBracketTopLevel
 import io.github.techouse.qskotlin.models.DecodeOptions
 import io.github.techouse.qskotlin.models.Delimiter
+import io.github.techouse.qskotlin.models.QueryProfile
 import io.github.techouse.qskotlin.models.RegexDelimiter
 import io.github.techouse.qskotlin.models.StringDelimiter
 import io.github.techouse.qskotlin.models.Undefined
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.util.stream.IntStream
 
 /** A helper object for decoding query strings into structured data. */
 internal object Decoder {
@@ -29,20 +31,40 @@ internal object Decoder {
         currentListLength: Int,
         isBracketListValue: Boolean = false,
     ): Any? {
-        if (value is String && value.isNotEmpty() && options.comma && value.contains(',')) {
-            if (options.throwOnLimitExceeded && !isBracketListValue) {
-                if (options.listLimit < 0 || commaCountReachesLimit(value, options.listLimit)) {
-                    Utils.throwListLimitExceeded(options.listLimit)
-                }
+        enforceListValueLimit(value, options, currentListLength, isBracketListValue)
+
+        return if (isCommaListValue(value, options)) splitCommaValue(value as String) else value
+    }
+
+    private fun isCommaListValue(value: Any?, options: DecodeOptions): Boolean =
+        value is String && value.isNotEmpty() && options.comma && value.contains(',')
+
+    /**
+     * The limit checks of [parseListValue], without splitting. Throws only when
+     * [DecodeOptions.throwOnLimitExceeded] is set.
+     */
+    private fun enforceListValueLimit(
+        value: Any?,
+        options: DecodeOptions,
+        currentListLength: Int,
+        isBracketListValue: Boolean,
+    ) {
+        if (!options.throwOnLimitExceeded) return
+
+        if (isCommaListValue(value, options)) {
+            if (
+                !isBracketListValue &&
+                    (options.listLimit < 0 ||
+                        commaCountReachesLimit(value as String, options.listLimit))
+            ) {
+                Utils.throwListLimitExceeded(options.listLimit)
             }
-            return splitCommaValue(value)
+            return
         }
 
-        if (options.throwOnLimitExceeded && currentListLength >= options.listLimit) {
+        if (currentListLength >= options.listLimit) {
             Utils.throwListLimitExceeded(options.listLimit)
         }
-
-        return value
     }
 
     private fun commaCountReachesLimit(value: String, limit: Int): Boolean {
@@ -130,20 +152,119 @@ internal object Decoder {
             else -> ArrayList(minOf(maxParts, MAX_PREALLOCATED_SPLIT_PARTS))
         }
 
+    /**
+     * Returns `true` when `input[start, end)` contains no `%` or `+` and the library default
+     * decoder is in use, i.e. decoding the slice would return it unchanged.
+     */
+    private fun isPlainToken(input: String, start: Int, end: Int, options: DecodeOptions): Boolean {
+        if (options.hasCustomDecoder) return false
+        for (i in start until end) {
+            val ch = input[i]
+            if (ch == '%' || ch == '+') return false
+        }
+        return true
+    }
+
+    /**
+     * Decode the key slice `part[0, end)`, returning a canonical instance from
+     * [DecodeOptions.stringPool] when one is configured. Plain slices are looked up in place
+     * without building an intermediate String.
+     */
+    private fun decodeKeySlice(
+        part: String,
+        end: Int,
+        charset: Charset,
+        options: DecodeOptions,
+    ): String {
+        val pool = options.stringPool
+        if (pool != null && isPlainToken(part, 0, end, options)) {
+            return pool.intern(part, 0, end)
+        }
+
+        val keySlice = if (end == part.length) part else part.substring(0, end)
+        val decoded = options.decodeKey(keySlice, charset).orEmpty()
+        return pool?.intern(decoded) ?: decoded
+    }
+
+    /**
+     * One decoded `key=value` part. [rawValue] is `null` for a bare key without `=`; [value] is
+     * already split on commas (when enabled) and decoded.
+     */
+    private class Token(
+        val key: String,
+        val rawValue: String?,
+        val value: Any?,
+        val isBracketListValue: Boolean,
+        val parsedCommaList: Boolean,
+    )
+
+    /**
+     * Split [part] into its key and value and decode both. This step only reads [options], so it
+     * may run for many parts concurrently; list limits, duplicates and budgets are applied
+     * afterwards, in input order.
+     */
+    private fun tokenize(part: String, charset: Charset, options: DecodeOptions): Token? {
+        if (part.isEmpty()) return null
+
+        val bracketEqualsPos = part.indexOf("]=")
+        val pos = if (bracketEqualsPos == -1) part.indexOf('=') else bracketEqualsPos + 1
+        val keyEnd = if (pos == -1) part.length else pos
+        val isBracketListValue = keyEnd >= 2 && part[keyEnd - 2] == '[' && part[keyEnd - 1] == ']'
+
+        if (pos == -1) {
+            // Decode a bare key (no '=') using key-aware decoding
+            return Token(
+                key = decodeKeySlice(part, keyEnd, charset, options),
+                rawValue = null,
+                value = if (options.strictNullHandling) null else "",
+                isBracketListValue = isBracketListValue,
+                parsedCommaList = false,
+            )
+        }
+
+        // Decode the key slice as a key; values decode as values
+        val key = decodeKeySlice(part, keyEnd, charset, options)
+        val pool = options.stringPool
+        val plainValue = pool != null && isPlainToken(part, pos + 1, part.length, options)
+        val rawValue =
+            if (plainValue) pool.intern(part, pos + 1, part.length) else part.substring(pos + 1)
+        val parsedCommaList = isCommaListValue(rawValue, options)
+        if (parsedCommaList) {
+            // The comma-list limit depends only on the raw value, so check it before decoding.
+            enforceListValueLimit(rawValue, options, 0, isBracketListValue)
+        }
+        val parsedValue = if (parsedCommaList) splitCommaValue(rawValue) else rawValue
+        val value =
+            if (plainValue && !parsedCommaList) {
+                // Default decoding of a token without '%' or '+' is the identity.
+                parsedValue
+            } else {
+                Utils.apply(parsedValue) { v: Any? ->
+                    val decoded = options.decodeValue(v as String?, charset)
+                    if (pool != null && decoded is String) pool.intern(decoded) else decoded
+                }
+            }
+
+        return Token(key, rawValue, value, isBracketListValue, parsedCommaList)
+    }
+
     /**
      * Parses a query string into a map of key-value pairs, handling various options for decoding.
      * Percent-encoded brackets (`%5B`, `%5D`) are normalized to literal brackets before splitting.
      *
      * @param str The query string to parse.
      * @param options The decoding options that affect how the string is parsed.
+     * @param budget Memory and time budget for this decode; pairs that do not fit end parsing
+     *   early.
      * @return A mutable map containing the parsed key-value pairs.
      * @throws IllegalArgumentException if the parameter limit is not a positive integer.
-     * @throws IndexOutOfBoundsException if the parameter limit is exceeded and
+     * @throws IndexOutOfBoundsException if the parameter limit or a memory budget is exceeded and
      *   `throwOnLimitExceeded` is true.
      */
     internal fun parseQueryStringValues(
         str: String,
         options: DecodeOptions = DecodeOptions(),
+        budget: DecodeBudget? = DecodeBudget.of(options),
     ): MutableMap<String, Any?> {
         val obj = mutableMapOf<String, Any?>()
 
@@ -195,42 +316,40 @@ internal object Decoder {
             }
         }
 
+        // Decoding tokens is independent per part; only the combine below depends on order.
+        val tokens: Array<Token?>? =
+            if (options.parallel && parts.size >= options.parallelThreshold) {
+                arrayOfNulls<Token>(parts.size).also { out ->
+                    IntStream.range(0, parts.size).parallel().forEach { i ->
+                        budget?.tickAt(i)
+                        if (i != skipIndex) out[i] = tokenize(parts[i], charset, options)
+                    }
+                }
+            } else {
+                null
+            }
+
         for (i in parts.indices) {
+            budget?.tick()
             if (i == skipIndex) continue
 
-            val part = parts[i]
-            if (part.isEmpty()) continue
-            val bracketEqualsPos = part.indexOf("]=")
-            val pos = if (bracketEqualsPos == -1) part.indexOf('=') else bracketEqualsPos + 1
-            val keySlice = if (pos == -1) part else part.take(pos)
-            val isBracketListValue = keySlice.endsWith("[]")
-
-            val key: String
-            var value: Any?
-            var parsedCommaList = false
-
-            if (pos == -1) {
-                // Decode a bare key (no '=') using key-aware decoding
-                key = options.decodeKey(keySlice, charset).orEmpty()
-                value = if (options.strictNullHandling) null else ""
-            } else {
-                // Decode the key slice as a key; values decode as values
-                key = options.decodeKey(keySlice, charset).orEmpty()
-                val rawValue = part.substring(pos + 1)
-                val parsedValue =
-                    parseListValue(
-                        rawValue,
-                        options,
-                        if (obj.containsKey(key) && obj[key] is List<*>) {
-                            (obj[key] as List<*>).size
-                        } else 0,
-                        isBracketListValue,
-                    )
-                parsedCommaList = rawValue.isNotEmpty() && options.comma && rawValue.contains(',')
-                value =
-                    Utils.apply(parsedValue) { v: Any? ->
-                        options.decodeValue(v as String?, charset)
-                    }
+            val token = if (tokens != null) tokens[i] else tokenize(parts[i], charset, options)
+            if (token == null) continue
+
+            val key = token.key
+            var value = token.value
+            val isBracketListValue = token.isBracketListValue
+            val parsedCommaList = token.parsedCommaList
+
+            if (token.rawValue != null && !parsedCommaList) {
+                enforceListValueLimit(
+                    token.rawValue,
+                    options,
+                    if (obj.containsKey(key) && obj[key] is List<*>) {
+                        (obj[key] as List<*>).size
+                    } else 0,
+                    isBracketListValue,
+                )
             }
             if (key.isEmpty()) continue
 
@@ -264,6 +383,8 @@ internal object Decoder {
                     )
             }
 
+            if (budget != null && !budget.chargePair(key, value)) break
+
             val existing = obj.containsKey(key)
             when {
                 existing && (options.duplicates == Duplicates.COMBINE || isBracketListValue) -> {
@@ -285,6 +406,338 @@ internal object Decoder {
         return obj
     }
 
+    /**
+     * Collects [QueryProfile] statistics in a single pass over [str], using the same delimiter,
+     * `]=` and bracket rules (including `%5B`/`%5D`) as [parseQueryStringValues] but without
+     * splitting or decoding anything.
+     *
+     * @param str The raw query string.
+     * @param options The decoding options whose delimiter, prefix and dot rules apply.
+     * @return The profile of [str].
+     */
+    internal fun profile(str: String, options: DecodeOptions): QueryProfile {
+        val scan = ProfileScan(str, options.getAllowDots)
+        var start = if (options.ignoreQueryPrefix && str.startsWith('?')) 1 else 0
+
+        when (val delimiter = options.delimiter) {
+            is StringDelimiter -> {
+                val separator = delimiter.value
+                while (true) {
+                    val next = str.indexOf(separator, start)
+                    val end = if (next == -1) str.length else next
+                    if (end > start) scan.visit(start, end)
+
+                    if (next == -1) break
+                    start = next + separator.length
+                }
+            }
+
+            is RegexDelimiter -> {
+                val matcher = delimiter.matcher(str).region(start, str.length)
+                while (matcher.find()) {
+                    if (matcher.end() == matcher.start()) continue
+                    if (matcher.start() > start) scan.visit(start, matcher.start())
+                    start = matcher.end()
+                }
+                if (str.length > start) scan.visit(start, str.length)
+            }
+        }
+
+        return QueryProfile(
+            length = str.length,
+            parameterCount = scan.count,
+            maxDepth = scan.maxDepth,
+            maxIndex = scan.maxIndex,
+            longestKey = scan.longestKey,
+            longestValue = scan.longestValue,
+            charsetSentinel = scan.sentinel,
+        )
+    }
+
+    /** Running totals for [profile]; [visit] inspects one `key=value` part in place. */
+    private class ProfileScan(private val str: String, private val allowDots: Boolean) {
+        var count = 0
+        var maxDepth = 0
+        var maxIndex = -1
+        var longestKey = 0
+        var longestValue = 0
+        var sentinel: Sentinel? = null
+
+        fun visit(start: Int, end: Int) {
+            count++
+
+            if (sentinel == null && str.startsWith("utf8=", start)) {
+                sentinel =
+                    Sentinel.entries.firstOrNull { candidate ->
+                        val encoded = candidate.encoded
+                        end - start == encoded.length && str.startsWith(encoded, start)
+                    }
+            }
+
+            // Same split rule as parseQueryStringValues: the first "]=" wins, then the first '='.
+            var pos = -1
+            var firstEquals = -1
+            var i = start
+            while (i < end) {
+                val ch = str[i]
+                if (ch == '=') {
+                    if (firstEquals == -1) firstEquals = i
+                } else if (ch == ']' && i + 1 < end && str[i + 1] == '=') {
+                    pos = i + 1
+                    break
+                } else if (encodedBracketAt(i, end) == ']' && i + 3 < end && str[i + 3] == '=') {
+                    pos = i + 3
+                    break
+                }
+                i++
+            }
+            if (pos == -1) pos = firstEquals
+
+            val keyEnd = if (pos == -1) end else pos
+            longestKey = maxOf(longestKey, keyEnd - start)
+            if (pos != -1) longestValue = maxOf(longestValue, end - pos - 1)
+
+            scanKey(start, keyEnd)
+        }
+
+        /** Count nested segments and the largest numeric bracket index of `str[start, end)`. */
+        private fun scanKey(start: Int, end: Int) {
+            var depth = 0
+            var level = 0
+            var index = 0
+            var numeric = false
+            var digits = false
+            var leadingBracket = false
+            var i = start
+            while (i < end) {
+                val encoded = encodedBracketAt(i, end)
+                val ch = if (encoded != NO_BRACKET) encoded else str[i]
+                when {
+                    ch == '[' -> {
+                        if (level == 0) {
+                            if (i == start) leadingBracket = true
+                            depth++
+                            index = 0
+                            numeric = true
+                            digits = false
+                        } else {
+                            numeric = false
+                        }
+                        level++
+                    }
+
+                    ch == ']' && level > 0 -> {
+                        level--
+                        if (level == 0 && numeric && digits) {
+                            maxIndex = maxOf(maxIndex, index)
+                        }
+                    }
+
+                    level == 0 -> {
+                        if (ch == '.' && allowDots && i + 1 < end) {
+                            val next = str[i + 1]
+                            if (next != '.' && next != '[') depth++
+                        }
+                    }
+
+                    numeric && ch in '0'..'9' -> {
+                        digits = true
+                        index =
+                            if (index > (Int.MAX_VALUE - 9) / 10) Int.MAX_VALUE
+                            else index * 10 + (ch - '0')
+                    }
+
+                    else -> numeric = false
+                }
+                i += if (encoded != NO_BRACKET) 3 else 1
+            }
+
+            // A key such as "[a][b]" uses its first group as the root.
+            if (leadingBracket) depth--
+            maxDepth = maxOf(maxDepth, depth)
+        }
+
+        /**
+         * Returns '[' or ']' when `str[i, end)` starts with `%5B` or `%5D`, otherwise
+         * [NO_BRACKET].
+         */
+        private fun encodedBracketAt(i: Int, end: Int): Char {
+            if (str[i] != '%' || i + 2 >= end || str[i + 1] != '5') return NO_BRACKET
+            return when (str[i + 2]) {
+                'B',
+                'b' -> '['
+                'D',
+                'd' -> ']'
+                else -> NO_BRACKET
+            }
+        }
+
+        private companion object {
+            const val NO_BRACKET = '\u0000'
+        }
+    }
+
+    /**
+     * Returns `true` when [key] carries bracket or (with [allowDots]) dot syntax that requires
+     * nested key parsing.
+     */
+    internal fun hasStructuredSyntax(key: String, allowDots: Boolean): Boolean =
+        when {
+            key.indexOf('[') >= 0 -> true
+            !allowDots -> false
+            key.indexOf('.') >= 0 -> true
+            key.indexOf('%') < 0 -> false
+            else -> key.contains("%2E") || key.contains("%2e")
+        }
+
+    /**
+     * Builds the final decoded structure from the flat key/value pairs produced by
+     * [parseQueryStringValues] (or the entries of a Map input).
+     *
+     * @param tempObj The flat key/value pairs to expand into nested Maps/Lists.
+     * @param options The decoding options that affect how the keys are parsed.
+     * @param decodeFromString Whether the pairs originate from a query string (values parsed).
+     * @param budget Memory and time budget for this decode; once the memory budget is exhausted
+     *   the remaining pairs are dropped.
+     * @param segmentCache Optional memo of split keys shared by a batch of decodes.
+     * @return The compacted, nested decode result.
+     */
+    internal fun assemble(
+        tempObj: MutableMap<String, Any?>?,
+        options: DecodeOptions,
+        decodeFromString: Boolean,
+        budget: DecodeBudget? = DecodeBudget.of(options),
+        segmentCache: KeySegmentCache? = null,
+    ): MutableMap<String, Any?> {
+        if (decodeFromString && tempObj?.isNotEmpty() == true) {
+            val allowDots = options.getAllowDots
+            val hasAnyStructuredSyntax =
+                tempObj.keys.any { key -> hasStructuredSyntax(key, allowDots) }
+            if (!hasAnyStructuredSyntax) {
+                return Utils.compact(tempObj, options.allowSparseLists)
+            }
+        }
+
+        var obj = mutableMapOf<String, Any?>()
+
+        if (tempObj?.isNotEmpty() == true) {
+            val structuredRoots =
+                if (decodeFromString) {
+                    fun leadingStructuredRoot(key: String): String {
+                        val segments =
+                            splitKeyIntoSegments(
+                                originalKey = key,
+                                allowDots = options.getAllowDots,
+                                maxDepth = options.depth,
+                                strictDepth = options.strictDepth,
+                            )
+                        val first = segments.firstOrNull() ?: return key
+                        if (!first.startsWith('[')) return first
+
+                        val last = first.lastIndexOf(']')
+                        val cleanRoot =
+                            if (last > 0) first.substring(1, last) else first.substring(1)
+                        // `[]` parses as a top-level list, which merges through index "0".
+                        return cleanRoot.ifEmpty { "0" }
+                    }
+
+                    buildSet {
+                        for (key in tempObj.keys) {
+                            val bracketIndex = key.indexOf('[').takeIf { it >= 0 } ?: Int.MAX_VALUE
+                            val hasPercent = key.indexOf('%') >= 0
+                            val dotIndex =
+                                if (options.getAllowDots) {
+                                    key.indexOf('.').takeIf { it >= 0 } ?: Int.MAX_VALUE
+                                } else {
+                                    Int.MAX_VALUE
+                                }
+                            val encodedDotIndex =
+                                if (options.getAllowDots && hasPercent) {
+                                    minOf(
+                                        key.indexOf("%2E").takeIf { it >= 0 } ?: Int.MAX_VALUE,
+                                        key.indexOf("%2e").takeIf { it >= 0 } ?: Int.MAX_VALUE,
+                                    )
+                                } else {
+                                    Int.MAX_VALUE
+                                }
+
+                            val splitAt = minOf(bracketIndex, dotIndex, encodedDotIndex)
+                            if (splitAt != Int.MAX_VALUE) {
+                                if (splitAt == 0) {
+                                    add(leadingStructuredRoot(key))
+                                } else {
+                                    add(key.substring(0, splitAt))
+                                }
+                            }
+                        }
+                    }
+                } else {
+                    emptySet()
+                }
+
+            fun needsParsing(key: String): Boolean =
+                !decodeFromString ||
+                    hasStructuredSyntax(key, options.getAllowDots) ||
+                    key in structuredRoots
+
+            // Building each key's nested tree is independent; merging below stays in input order.
+            // Node accounting is sequential, so a node budget keeps this stage on one thread.
+            val preParsed: Array<Any?>? =
+                if (
+                    options.parallel &&
+                        tempObj.size >= options.parallelThreshold &&
+                        options.maxNodes == Int.MAX_VALUE
+                ) {
+                    val entries = tempObj.entries.toTypedArray()
+                    arrayOfNulls<Any?>(entries.size).also { out ->
+                        IntStream.range(0, entries.size).parallel().forEach { i ->
+                            budget?.tickAt(i)
+                            val (key, value) = entries[i]
+                            if (needsParsing(key)) {
+                                out[i] =
+                                    parseKeys(
+                                        key,
+                                        value,
+                                        options,
+                                        decodeFromString,
+                                        segmentCache = segmentCache,
+                                    )
+                            }
+                        }
+                    }
+                } else {
+                    null
+                }
+
+            var index = 0
+            for ((key, value) in tempObj) {
+                val i = index++
+                budget?.tick()
+                if (!needsParsing(key)) {
+                    obj[key] = value
+                    continue
+                }
+
+                val parsed =
+                    if (preParsed != null) preParsed[i]
+                    else parseKeys(key, value, options, decodeFromString, budget, segmentCache)
+                if (budget?.exhausted == true) break
+
+                if (obj.isEmpty() && parsed is MutableMap<*, *>) {
+                    @Suppress("UNCHECKED_CAST")
+                    obj = parsed as MutableMap<String, Any?>
+                    continue
+                }
+
+                @Suppress("UNCHECKED_CAST")
+                obj = Utils.merge(obj, parsed, options, budget) as MutableMap<String, Any?>
+                if (budget?.exhausted == true) break
+            }
+        }
+
+        return Utils.compact(obj, options.allowSparseLists)
+    }
+
     /**
      * Parses a chain of keys into an object, handling nested structures and lists.
      *
@@ -292,13 +745,15 @@ internal object Decoder {
      * @param value The value to assign to the last key in the chain.
      * @param options The decoding options that affect how the object is parsed.
      * @param valuesParsed Indicates whether the values have already been parsed.
-     * @return The resulting object after parsing the chain.
+     * @param budget Memory budget charged for every container and list slot built here.
+     * @return The resulting object after parsing the chain, or `null` once [budget] is exhausted.
      */
     private fun parseObject(
         chain: List<String>,
         value: Any?,
         options: DecodeOptions,
         valuesParsed: Boolean,
+        budget: DecodeBudget? = null,
     ): Any? {
         val currentListLength =
             if (chain.isNotEmpty() && chain.last() == "[]") {
@@ -315,6 +770,7 @@ internal object Decoder {
             val obj: Any?
 
             if (root == "[]" && options.parseLists) {
+                if (budget != null && !budget.chargeNodes(1)) return null
                 obj =
                     when {
                         options.allowEmptyLists &&
@@ -331,19 +787,12 @@ internal object Decoder {
                             )
                     }
             } else {
+                if (budget != null && !budget.chargeNodes(1)) return null
+
                 // Always build *string-keyed* maps here
                 val mutableObj = LinkedHashMap<String, Any?>(1)
 
-                val cleanRoot =
-                    if (root.startsWith("[")) {
-                        val last = root.lastIndexOf(']')
-                        if (last > 0) root.substring(1, last) else root.substring(1)
-                    } else root
-
-                val decodedRoot =
-                    if (options.getDecodeDotInKeys && cleanRoot.contains("%2E", ignoreCase = true))
-                        cleanRoot.replace("%2E", ".", ignoreCase = true)
-                    else cleanRoot
+                val decodedRoot = cleanSegment(root, options)
 
                 val isPureNumeric = decodedRoot.isNotEmpty() && decodedRoot.all { it.isDigit() }
                 val idx: Int? = if (isPureNumeric) decodedRoot.toInt() else null
@@ -360,6 +809,9 @@ internal object Decoder {
 
                     // Proper list index (e.g., "[3]") and allowed by listLimit -> build a list.
                     isBracketedNumeric && idx >= 0 && idx < options.listLimit -> {
+                        // Charge the padding up front so a sparse index never allocates past
+                        // the budget.
+                        if (budget != null && !budget.chargeNodes(idx + 1)) return null
                         val list = MutableList<Any?>(idx + 1) { Undefined.Companion() }
                         list[idx] = leaf
                         obj = list
@@ -390,6 +842,47 @@ internal object Decoder {
         return leaf
     }
 
+    /**
+     * Strips the surrounding brackets from a key segment and, when
+     * [DecodeOptions.getDecodeDotInKeys] is enabled, maps `%2E`/`%2e` to a literal '.'. Segments
+     * are interned through [DecodeOptions.stringPool] when one is configured.
+     */
+    private fun cleanSegment(root: String, options: DecodeOptions): String {
+        val pool = options.stringPool
+        val cleanRoot =
+            if (root.startsWith("[")) {
+                val last = root.lastIndexOf(']')
+                val end = if (last > 0) last else root.length
+                pool?.intern(root, 1, end) ?: root.substring(1, end)
+            } else pool?.intern(root) ?: root
+
+        return if (options.getDecodeDotInKeys && cleanRoot.contains("%2E", ignoreCase = true))
+            cleanRoot.replace("%2E", ".", ignoreCase = true)
+        else cleanRoot
+    }
+
+    /**
+     * Splits an already-decoded flat key into its cleaned path segments (no surrounding brackets),
+     * using the same depth and dot rules as [parseKeys]. A `[]` append yields an empty segment.
+     *
+     * @param key The decoded flat key.
+     * @param options The decoding options that affect how the key is split.
+     * @return The path segments, or a single segment when the key has no structured syntax.
+     */
+    internal fun splitKeyIntoPath(key: String, options: DecodeOptions): List<String> {
+        if (!hasStructuredSyntax(key, options.getAllowDots)) return listOf(key)
+
+        val segments =
+            splitKeyIntoSegments(
+                originalKey = key,
+                allowDots = options.getAllowDots,
+                maxDepth = options.depth,
+                strictDepth = options.strictDepth,
+            )
+
+        return segments.map { segment -> cleanSegment(segment, options) }
+    }
+
     /**
      * Parses a key and its associated value into an object, handling nested structures and lists.
      *
@@ -397,6 +890,8 @@ internal object Decoder {
      * @param value The value associated with the key.
      * @param options The decoding options that affect how the key-value pair is parsed.
      * @param valuesParsed Indicates whether the values have already been parsed.
+     * @param budget Optional memory budget charged for the nested structure.
+     * @param segmentCache Optional memo of split keys shared by a batch of decodes.
      * @return The resulting object after parsing the key-value pair.
      */
     internal fun parseKeys(
@@ -404,18 +899,21 @@ internal object Decoder {
         value: Any?,
         options: DecodeOptions,
         valuesParsed: Boolean,
+        budget: DecodeBudget? = null,
+        segmentCache: KeySegmentCache? = null,
     ): Any? {
         if (givenKey.isNullOrEmpty()) return null
 
         val segments =
-            splitKeyIntoSegments(
-                originalKey = givenKey,
-                allowDots = options.getAllowDots,
-                maxDepth = options.depth,
-                strictDepth = options.strictDepth,
-            )
+            segmentCache?.segments(givenKey)
+                ?: splitKeyIntoSegments(
+                    originalKey = givenKey,
+                    allowDots = options.getAllowDots,
+                    maxDepth = options.depth,
+                    strictDepth = options.strictDepth,
+                )
 
-        return parseObject(segments, value, options, valuesParsed)
+        return parseObject(segments, value, options, valuesParsed, budget)
     }
 
     /**
@@ -437,7 +935,9 @@ internal object Decoder {
      * - `a%2E\[b]` → remains `a%2E\[b]` (no split here)
      */
     private fun dotToBracketTopLevel(s: String): String {
-        val sb = StringBuilder(s.length)
+        if (s.indexOf('.') < 0) return s
+
+        val sb = Scratch.borrowBuilder()
         var depth = 0
         var i = 0
         while (i < s.length) {
@@ -500,7 +1000,9 @@ internal object Decoder {
                 }
             }
         }
-        return sb.toString()
+        val result = sb.toString()
+        Scratch.releaseBuilder(sb)
+        return result
     }
 
     /**
@@ -5,10 +5,14 @@ import io.github.techouse.qskotlin.enums.Formatter
 import io.github.techouse.qskotlin.enums.ListFormat
 import io.github.techouse.qskotlin.enums.ListFormatGenerator
 import io.github.techouse.qskotlin.models.DateSerializer
+import io.github.techouse.qskotlin.models.EncodeOptions
 import io.github.techouse.qskotlin.models.Filter
 import io.github.techouse.qskotlin.models.FunctionFilter
 import io.github.techouse.qskotlin.models.IterableFilter
+import io.github.techouse.qskotlin.models.KeyPath
+import io.github.techouse.qskotlin.models.PathFilter
 import io.github.techouse.qskotlin.models.Sorter
+import io.github.techouse.qskotlin.models.TypeWriters
 import io.github.techouse.qskotlin.models.Undefined
 import io.github.techouse.qskotlin.models.ValueEncoder
 import java.nio.ByteBuffer
@@ -16,8 +20,7 @@ import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
 import java.time.Instant
 import java.time.LocalDateTime
-import java.util.Collections
-import java.util.IdentityHashMap
+import java.util.stream.BaseStream
 
 /** A helper object for encoding data into a query string format. */
 internal object Encoder {
@@ -26,6 +29,10 @@ internal object Encoder {
     private val repeatGenerator: ListFormatGenerator = ListFormat.REPEAT.generator
     private val commaGenerator: ListFormatGenerator = ListFormat.COMMA.generator
 
+    // Shared "[i]" path segments for small list indices, raw and percent-encoded.
+    private val indexSegments: Array<String> = Array(1_024) { "[$it]" }
+    private val encodedIndexSegments: Array<String> = Array(indexSegments.size) { "%5B$it%5D" }
+
     // Traversal phases for the encoder's explicit stack.
     private enum class Phase {
         START,
@@ -50,29 +57,108 @@ internal object Encoder {
         val formatter: Formatter,
         val encodeValuesOnly: Boolean,
         val charset: Charset,
+        val defaultEncoder: Boolean,
+        val typeWriters: TypeWriters?,
     ) {
         val isCommaGenerator: Boolean = generateArrayPrefix === commaGenerator
 
+        // An IterableFilter's keys are listed once per traversal rather than once per node.
+        val filterKeys: List<Any?>? = (filter as? IterableFilter)?.iterable?.toList()
+
+        // Children only ever drop the encoder, so that variant is built once per traversal.
+        private var withoutEncoder: TraversalContext? = null
+
         fun withEncoder(value: ValueEncoder?): TraversalContext =
-            if (value === encoder) this else copy(encoder = value)
+            when {
+                value === encoder -> this
+                value == null ->
+                    withoutEncoder ?: copy(encoder = null).also { withoutEncoder = it }
+                else -> copy(encoder = value)
+            }
     }
 
-    // Mutable traversal frame; kept local to avoid leaking internal state.
-    private class Frame(
-        var obj: Any?,
-        val undefined: Boolean,
-        val path: KeyPathNode,
-        val context: TraversalContext,
-        var phase: Phase = Phase.START,
-        var values: MutableList<Any?>? = null,
-        var objKeys: List<Any?> = emptyList(),
-        var index: Int = 0,
-        var adjustedPath: KeyPathNode = path,
-        var effectiveCommaLength: Int? = null,
-        var iterableList: List<Any?>? = null,
-        var tracked: Boolean = false,
-        var trackedObject: Any? = null,
-    )
+    // Mutable traversal frame; kept local to avoid leaking internal state. Frames live in an
+    // array-backed stack and are reset and reused by the next sibling or descendant.
+    private class Frame {
+        var obj: Any? = null
+        var undefined: Boolean = false
+        lateinit var path: KeyPathNode
+        lateinit var context: TraversalContext
+        // AllowlistFilter node for this value; `null` when the whole value is selected.
+        var selection: PathTrie? = null
+        var phase: Phase = Phase.START
+        var values: MutableList<Any?>? = null
+        // Child keys when they had to be computed (sort, IterableFilter, comma); otherwise Map
+        // entries are iterated through [entries] and sequences by index up to [keyCount].
+        var objKeys: List<Any?>? = null
+        var entries: Iterator<Map.Entry<*, *>>? = null
+        var keyCount: Int = 0
+        var index: Int = 0
+        lateinit var adjustedPath: KeyPathNode
+        var effectiveCommaLength: Int? = null
+        var iterableList: List<Any?>? = null
+        // Elements of a non-List Iterable that are pulled one at a time, with at most one
+        // element read ahead to answer "exactly one element?".
+        var iterator: Iterator<*>? = null
+        var lookahead: Any? = null
+        var hasLookahead: Boolean = false
+        var tracked: Boolean = false
+        var trackedObject: Any? = null
+
+        fun reset(
+            obj: Any?,
+            undefined: Boolean,
+            path: KeyPathNode,
+            context: TraversalContext,
+            selection: PathTrie?,
+        ) {
+            this.obj = obj
+            this.undefined = undefined
+            this.path = path
+            this.context = context
+            this.selection = selection
+            phase = Phase.START
+            values = null
+            objKeys = null
+            entries = null
+            keyCount = 0
+            index = 0
+            adjustedPath = path
+            effectiveCommaLength = null
+            iterableList = null
+            iterator = null
+            lookahead = null
+            hasLookahead = false
+            tracked = false
+            trackedObject = null
+        }
+
+        /** Drop references to user data so an idle pooled frame does not retain it. */
+        fun release() {
+            obj = null
+            values = null
+            objKeys = null
+            entries = null
+            iterableList = null
+            iterator = null
+            lookahead = null
+            trackedObject = null
+        }
+
+        /** `true` when the pulled sequence holds exactly one element; reads at most one ahead. */
+        fun hasSingleElement(): Boolean {
+            val source = iterator ?: return false
+            if (!hasLookahead) {
+                if (!source.hasNext()) return false
+                lookahead = source.next()
+                hasLookahead = true
+            }
+            return !source.hasNext()
+        }
+
+        /** `true` when the pulled sequence has no element left. */
+        fun isExhausted(): Boolean = !hasLookahead && iterator?.hasNext() != true
+    }
 
     /**
      * Encodes the given data into a query string format.
@@ -97,6 +183,14 @@ internal object Encoder {
      * @param encodeValuesOnly If true, only encodes values without keys.
      * @param charset The character set to use (default is UTF-8).
      * @param addQueryPrefix If true, adds a '?' prefix to the output.
+     * @param deadline Optional time budget and cancellation check, ticked once per node.
+     * @param assumeAcyclic If true, skips identity-based cycle detection and only limits depth.
+     * @param maxDepth Maximum container nesting allowed when [assumeAcyclic] is true.
+     * @param defaultEncoder If true, [encoder] is the default percent-encoder, so key paths are
+     *   encoded from their parent's cached encoded prefix instead of from scratch at every leaf,
+     *   and boolean, integer and enum leaves are taken from [Literals].
+     * @param typeWriters Optional per-type writers; a handled value is encoded as its written text.
+     * @param selection The `AllowlistFilter` node selecting [data], or `null` to encode all of it.
      */
     fun encode(
         data: Any?,
@@ -119,6 +213,12 @@ internal object Encoder {
         encodeValuesOnly: Boolean = false,
         charset: Charset = StandardCharsets.UTF_8,
         addQueryPrefix: Boolean = false,
+        deadline: Deadline? = null,
+        assumeAcyclic: Boolean = false,
+        maxDepth: Int = Int.MAX_VALUE,
+        defaultEncoder: Boolean = false,
+        typeWriters: TypeWriters? = null,
+        selection: PathTrie? = null,
     ): Any {
         val prefixValue: String = prefix ?: if (addQueryPrefix) "?" else ""
         val generator: ListFormatGenerator = generateArrayPrefix ?: indicesGenerator
@@ -141,32 +241,47 @@ internal object Encoder {
                 formatter = formatter,
                 encodeValuesOnly = encodeValuesOnly,
                 charset = charset,
+                defaultEncoder = defaultEncoder,
+                typeWriters = typeWriters,
             )
 
-        tryEncodeLinearChain(data, undefined, prefixValue, rootContext)?.let {
+        val depthLimit = if (assumeAcyclic) maxDepth else -1
+        tryEncodeLinearChain(data, undefined, prefixValue, rootContext, deadline, depthLimit)?.let {
             return it
         }
 
-        // Use identity-based tracking for the current traversal path to detect cycles.
-        val seen = Collections.newSetFromMap(IdentityHashMap<Any?, Boolean>())
+        // Use identity-based tracking for the current traversal path to detect cycles, unless the
+        // caller vouches for an acyclic input; then only the stack depth is bounded. The set is
+        // only handed back on a normal return; after an exception the next call simply borrows a
+        // fresh one.
+        val seen = if (assumeAcyclic) null else Scratch.borrowIdentitySet()
+
+        val frames = ArrayList<Frame>()
+        var depth = 0
+        // Reused view handed to a PathFilter; repointed at each frame's path.
+        var keyPath: KeyPath? = null
+
+        fun push(
+            obj: Any?,
+            undefined: Boolean,
+            path: KeyPathNode,
+            context: TraversalContext,
+            selection: PathTrie?,
+        ) {
+            if (depth == frames.size) frames.add(Frame())
+            frames[depth++].reset(obj, undefined, path, context, selection)
+        }
 
-        val stack = ArrayDeque<Frame>()
-        stack.add(
-            Frame(
-                obj = data,
-                undefined = undefined,
-                path = KeyPathNode.fromMaterialized(prefixValue),
-                context = rootContext,
-            )
-        )
+        push(data, undefined, KeyPathNode.fromMaterialized(prefixValue), rootContext, selection)
 
         var lastResult: Any? = null
 
         fun finishFrame(result: Any?) {
-            val completed = stack.removeLast()
+            val completed = frames[--depth]
             if (completed.tracked) {
-                completed.trackedObject?.let { seen.remove(it) }
+                completed.trackedObject?.let { seen?.remove(it) }
             }
+            completed.release()
             lastResult = result
         }
 
@@ -186,8 +301,9 @@ internal object Encoder {
             }
         }
 
-        while (stack.isNotEmpty()) {
-            val frame = stack.last()
+        while (depth > 0) {
+            deadline?.tick()
+            val frame = frames[depth - 1]
 
             when (frame.phase) {
                 Phase.START -> {
@@ -198,21 +314,80 @@ internal object Encoder {
                         return pathText ?: frame.path.materialize().also { pathText = it }
                     }
 
+                    fun encodedPath(encoder: ValueEncoder): String =
+                        if (context.defaultEncoder) {
+                            frame.path.encoded(context.charset, context.format)
+                        } else {
+                            encoder.invoke(materializedPath(), context.charset, context.format)
+                        }
+
                     when (val f = context.filter) {
                         is FunctionFilter -> {
                             obj = f.function(materializedPath(), obj)
                         }
 
+                        is PathFilter -> {
+                            val view =
+                                keyPath?.also { it.node = frame.path }
+                                    ?: KeyPath(frame.path).also { keyPath = it }
+                            obj = f.function(view, obj)
+                        }
+
                         else -> Unit
                     }
 
+                    val writers = context.typeWriters
+                    if (writers != null && obj != null) {
+                        writers.write(obj)?.let { obj = it }
+                    }
+
+                    if (obj !is Iterable<*>) {
+                        lazyIterable(obj)?.let { obj = it }
+                    }
+
+                    val arraySize = PrimitiveArrays.size(obj)
+                    if (arraySize >= 0) {
+                        val array = obj!!
+                        when {
+                            // A comma join only needs each element's text.
+                            context.isCommaGenerator && writers == null ->
+                                obj = PrimitiveArrays.texts(array)
+
+                            // Options that look at element values see them boxed, as in a List.
+                            arraySize == 0 ||
+                                context.isCommaGenerator ||
+                                context.filter != null ||
+                                context.sort != null ||
+                                writers != null ||
+                                frame.selection != null ||
+                                (context.encoder != null && !context.defaultEncoder) ->
+                                obj = PrimitiveArrays.boxed(array)
+
+                            else -> {
+                                finishFrame(
+                                    encodePrimitiveArray(
+                                        array,
+                                        arraySize,
+                                        frame.path,
+                                        context,
+                                        deadline,
+                                    )
+                                )
+                                continue
+                            }
+                        }
+                    }
+
                     if (obj is LocalDateTime) {
                         obj = context.serializeDate?.invoke(obj) ?: obj.toString()
                     } else if (context.isCommaGenerator && obj is Iterable<*>) {
                         obj = obj.map { value ->
-                            when (value) {
-                                is Instant -> value.toString()
-                                is LocalDateTime ->
+                            val written =
+                                if (writers != null && value != null) writers.write(value) else null
+                            when {
+                                written != null -> written
+                                value is Instant -> value.toString()
+                                value is LocalDateTime ->
                                     context.serializeDate?.invoke(value) ?: value.toString()
 
                                 else -> value
@@ -220,15 +395,23 @@ internal object Encoder {
                         }
                     }
 
+                    val selection = frame.selection
+                    if (
+                        selection != null &&
+                            obj !is Map<*, *> &&
+                            obj !is Iterable<*> &&
+                            obj !is Array<*>
+                    ) {
+                        // The allowlist expects more segments below a scalar: nothing is selected.
+                        finishFrame(emptyList<Any?>())
+                        continue
+                    }
+
                     if (!frame.undefined && obj == null) {
                         if (context.strictNullHandling) {
                             val keyOnly =
                                 if (context.encoder != null && !context.encodeValuesOnly) {
-                                    context.encoder.invoke(
-                                        materializedPath(),
-                                        context.charset,
-                                        context.format,
-                                    )
+                                    encodedPath(context.encoder)
                                 } else {
                                     materializedPath()
                                 }
@@ -240,7 +423,10 @@ internal object Encoder {
 
                     val trackObject = obj is Map<*, *> || obj is Array<*> || obj is Iterable<*>
 
-                    if (trackObject) {
+                    if (trackObject && seen == null) {
+                        // Each container frame sits one level below its parent's frame.
+                        if (depth > depthLimit) throw depthExceeded(depthLimit)
+                    } else if (trackObject && seen != null) {
                         val objRef = obj
                         if (seen.contains(objRef)) {
                             throw IndexOutOfBoundsException("Cyclic object value")
@@ -259,18 +445,14 @@ internal object Encoder {
                             if (context.encoder != null) {
                                 val keyValue =
                                     if (context.encodeValuesOnly) materializedPath()
-                                    else
-                                        context.encoder.invoke(
-                                            materializedPath(),
-                                            context.charset,
-                                            context.format,
-                                        )
-                                val encodedValue =
-                                    context.encoder.invoke(obj, context.charset, context.format)
+                                    else encodedPath(context.encoder)
+                                val encodedValue = encodeLeaf(obj, context, context.encoder)
                                 "${context.formatter(keyValue)}=${context.formatter(encodedValue)}"
                             } else {
                                 val rawValue =
-                                    Utils.bytesToString(obj, context.charset) ?: obj.toString()
+                                    Utils.bytesToString(obj, context.charset)
+                                        ?: Literals.encoded(obj)
+                                        ?: obj.toString()
                                 "${context.formatter(materializedPath())}=${
                                     context.formatter(
                                         rawValue
@@ -289,10 +471,21 @@ internal object Encoder {
                     }
 
                     if (obj is Iterable<*> && obj !is List<*>) {
-                        frame.iterableList = obj.toList()
+                        // Comma joins, sorting and index filters need every element up front;
+                        // otherwise elements are pulled one at a time while iterating.
+                        if (
+                            context.isCommaGenerator ||
+                                context.sort != null ||
+                                context.filterKeys != null ||
+                                (selection != null && selection.any == null)
+                        ) {
+                            frame.iterableList = obj.toList()
+                        } else {
+                            frame.iterator = obj.iterator()
+                        }
                     }
 
-                    val objKeys: List<Any?> =
+                    val objKeys: List<Any?>? =
                         when {
                             context.isCommaGenerator && obj is Iterable<*> -> {
                                 val items = obj as? List<*> ?: frame.iterableList!!
@@ -329,11 +522,16 @@ internal object Encoder {
                                 }
                             }
 
-                            context.filter is IterableFilter -> {
-                                context.filter.iterable.toList()
+                            context.filterKeys != null -> context.filterKeys
+
+                            // Only the allowlisted children are visited, in pattern order.
+                            selection != null && selection.any == null -> {
+                                val keys = selectedKeys(obj, selection, frame.iterableList)
+                                if (context.sort != null) keys.sortWith(context.sort)
+                                keys
                             }
 
-                            else -> {
+                            context.sort != null -> {
                                 val keys: Iterable<Any?> =
                                     when (obj) {
                                         is Map<*, *> -> obj.keys
@@ -347,12 +545,11 @@ internal object Encoder {
                                         else -> emptyList()
                                     }
 
-                                if (context.sort != null) {
-                                    keys.toMutableList().apply { sortWith(context.sort) }
-                                } else {
-                                    keys.toList()
-                                }
+                                keys.toMutableList().apply { sortWith(context.sort) }
                             }
+
+                            // Unsorted keys are walked in place in ITERATE.
+                            else -> null
                         }
 
                     val pathForChildren: KeyPathNode =
@@ -367,12 +564,12 @@ internal object Encoder {
                                 ) {
                                     frame.effectiveCommaLength == 1
                                 } else {
-                                    val count =
-                                        when (obj) {
-                                            is Collection<*> -> obj.size
-                                            else -> frame.iterableList?.size ?: obj.count()
-                                        }
-                                    count == 1
+                                    when (obj) {
+                                        is Collection<*> -> obj.size == 1
+                                        else ->
+                                            frame.iterableList?.let { it.size == 1 }
+                                                ?: frame.hasSingleElement()
+                                    }
                                 })
                         )
                             pathForChildren.append("[]")
@@ -382,18 +579,31 @@ internal object Encoder {
                         if (obj is Iterable<*>) {
                             when (obj) {
                                 is Collection<*> -> obj.isEmpty()
-                                else -> frame.iterableList?.isEmpty() ?: !obj.iterator().hasNext()
+                                else -> frame.iterableList?.isEmpty() ?: frame.isExhausted()
                             }
                         } else {
                             false
                         }
 
-                    if (context.allowEmptyLists && obj is Iterable<*> && iterableEmpty) {
+                    if (
+                        context.allowEmptyLists &&
+                            obj is Iterable<*> &&
+                            iterableEmpty &&
+                            selection == null
+                    ) {
                         finishFrame(adjustedPath.append("[]").materialize())
                         continue
                     }
 
                     frame.objKeys = objKeys
+                    if (objKeys == null) {
+                        when (obj) {
+                            is Map<*, *> -> frame.entries = obj.entries.iterator()
+                            is List<*> -> frame.keyCount = obj.size
+                            is Array<*> -> frame.keyCount = obj.size
+                            is Iterable<*> -> frame.keyCount = frame.iterableList?.size ?: 0
+                        }
+                    }
                     frame.adjustedPath = adjustedPath
                     frame.phase = Phase.ITERATE
                     continue
@@ -401,73 +611,129 @@ internal object Encoder {
 
                 Phase.ITERATE -> {
                     val context = frame.context
-                    if (frame.index >= frame.objKeys.size) {
-                        finishFrame(frame.values ?: emptyList<Any?>())
-                        continue
-                    }
-
-                    val key = frame.objKeys[frame.index++]
                     val obj = frame.obj
-
-                    val (value: Any?, valueUndefined: Boolean) =
-                        when {
-                            key is Map<*, *> &&
-                                key.containsKey("value") &&
-                                key["value"] !is Undefined -> {
-                                Pair(key["value"], false)
+                    val objKeys = frame.objKeys
+                    val entries = frame.entries
+                    val key: Any?
+                    var value: Any? = null
+                    var valueUndefined = true
+
+                    if (objKeys != null) {
+                        if (frame.index >= objKeys.size) {
+                            finishFrame(frame.values ?: emptyList<Any?>())
+                            continue
+                        }
+                        key = objKeys[frame.index++]
+                        when (obj) {
+                            is Map<*, *> -> {
+                                value = obj[key]
+                                valueUndefined = !obj.containsKey(key)
                             }
 
-                            else ->
-                                when (obj) {
-                                    is Map<*, *> -> Pair(obj[key], !obj.containsKey(key))
-                                    is Iterable<*> -> {
-                                        val index = key as? Int
-                                        val list =
-                                            when (obj) {
-                                                is List<*> -> obj
-                                                else -> frame.iterableList ?: obj.toList()
-                                            }
-                                        if (index != null && index >= 0 && index < list.size) {
-                                            Pair(list[index], false)
-                                        } else {
-                                            Pair(null, true)
-                                        }
-                                    }
-
-                                    is Array<*> -> {
-                                        val index = key as? Int
-                                        if (index != null && index >= 0 && index < obj.size) {
-                                            Pair(obj[index], false)
-                                        } else {
-                                            Pair(null, true)
-                                        }
+                            is Iterable<*> -> {
+                                val index = key as? Int
+                                val list =
+                                    when (obj) {
+                                        is List<*> -> obj
+                                        else -> frame.iterableList ?: obj.toList()
                                     }
+                                if (index != null && index >= 0 && index < list.size) {
+                                    value = list[index]
+                                    valueUndefined = false
+                                }
+                            }
 
-                                    else -> Pair(null, true)
+                            is Array<*> -> {
+                                val index = key as? Int
+                                if (index != null && index >= 0 && index < obj.size) {
+                                    value = obj[index]
+                                    valueUndefined = false
                                 }
+                            }
+                        }
+                    } else if (entries != null) {
+                        if (!entries.hasNext()) {
+                            finishFrame(frame.values ?: emptyList<Any?>())
+                            continue
+                        }
+                        val entry = entries.next()
+                        key = entry.key
+                        value = entry.value
+                        valueUndefined = false
+                    } else if (frame.iterator != null) {
+                        val source = frame.iterator!!
+                        if (frame.hasLookahead) {
+                            value = frame.lookahead
+                            frame.lookahead = null
+                            frame.hasLookahead = false
+                        } else if (source.hasNext()) {
+                            value = source.next()
+                        } else {
+                            finishFrame(frame.values ?: emptyList<Any?>())
+                            continue
                         }
+                        key = frame.index++
+                        valueUndefined = false
+                    } else {
+                        if (frame.index >= frame.keyCount) {
+                            finishFrame(frame.values ?: emptyList<Any?>())
+                            continue
+                        }
+                        val index = frame.index++
+                        key = index
+                        value =
+                            when (obj) {
+                                is List<*> -> obj[index]
+                                is Array<*> -> obj[index]
+                                else -> frame.iterableList!![index]
+                            }
+                        valueUndefined = false
+                    }
+
+                    // Comma-joined lists carry their value inside a synthetic key map.
+                    if (
+                        key is Map<*, *> && key.containsKey("value") && key["value"] !is Undefined
+                    ) {
+                        value = key["value"]
+                        valueUndefined = false
+                    }
+
+                    var childSelection: PathTrie? = null
+                    val selection = frame.selection
+                    if (selection != null && key !is Map<*, *>) {
+                        val name =
+                            key as? String
+                                ?: (if (key is Int) Literals.encoded(key) else null)
+                                ?: key.toString()
+                        val node = selection.child(name) ?: continue
+                        if (!node.terminal) childSelection = node
+                    }
 
                     if (context.skipNulls && value == null) {
                         continue
                     }
 
-                    val encodedKey: String =
-                        if (context.allowDots && context.encodeDotInKeys)
-                            key.toString().replace(".", "%2E")
-                        else key.toString()
-
                     val adjustedPath = frame.adjustedPath
                     val keyPath: KeyPathNode =
-                        if (obj is Iterable<*>) {
-                            buildSequenceChildPath(
-                                adjustedPath = adjustedPath,
-                                encodedKey = encodedKey,
-                                generator = context.generateArrayPrefix,
-                            )
-                        } else if (context.allowDots) {
-                            adjustedPath.append(".$encodedKey")
+                        if (key is Int && key >= 0 && obj is Iterable<*>) {
+                            indexChildPath(adjustedPath, key, context.generateArrayPrefix)
                         } else {
-                            adjustedPath.append("[$encodedKey]")
+                            val encodedKey: String =
+                                if (context.allowDots && context.encodeDotInKeys)
+                                    key.toString().replace(".", "%2E")
+                                else key.toString()
+
+                            if (obj is Iterable<*>) {
+                                buildSequenceChildPath(
+                                    adjustedPath = adjustedPath,
+                                    encodedKey = encodedKey,
+                                    generator = context.generateArrayPrefix,
+                                )
+                            } else if (context.allowDots) {
+                                adjustedPath.append(".$encodedKey")
+                            } else {
+                                adjustedPath.append("[$encodedKey]")
+                            }
                         }
 
                     val childEncoder =
@@ -481,14 +747,7 @@ internal object Encoder {
                     val childContext = context.withEncoder(childEncoder)
 
                     frame.phase = Phase.WAIT_CHILD
-                    stack.add(
-                        Frame(
-                            obj = value,
-                            undefined = valueUndefined,
-                            path = keyPath,
-                            context = childContext,
-                        )
-                    )
+                    push(value, valueUndefined, keyPath, childContext, childSelection)
                     continue
                 }
 
@@ -500,9 +759,225 @@ internal object Encoder {
             }
         }
 
+        seen?.let(Scratch::releaseIdentitySet)
         return lastResult ?: emptyList<Any?>()
     }
 
+    /**
+     * Writes one `key=value` fragment per element of a primitive [array] found at [path], reading
+     * each element without boxing. The fragments equal those of the same values in a List; callers
+     * must have ruled out filters, sorting, type writers and custom encoders.
+     */
+    private fun encodePrimitiveArray(
+        array: Any,
+        size: Int,
+        path: KeyPathNode,
+        context: TraversalContext,
+        deadline: Deadline?,
+    ): List<String> {
+        val pathForChildren = if (context.encodeDotInKeys) path.asDotEncoded() else path
+        val arrayPath =
+            if (context.commaRoundTrip && size == 1) pathForChildren.append("[]")
+            else pathForChildren
+        val encoding = context.encoder != null
+        val escape = encoding && PrimitiveArrays.needsEncoding(array)
+
+        val fragments = ArrayList<String>(size)
+        for (i in 0 until size) {
+            deadline?.tick()
+            val elementPath = indexChildPath(arrayPath, i, context.generateArrayPrefix)
+            val key =
+                if (encoding && !context.encodeValuesOnly) {
+                    elementPath.encoded(context.charset, context.format)
+                } else {
+                    elementPath.materialize()
+                }
+            val text = PrimitiveArrays.text(array, i)
+            val value = if (escape) Utils.encode(text, context.charset, context.format) else text
+            fragments.add("${context.formatter(key)}=${context.formatter(value)}")
+        }
+        return fragments
+    }
+
+    /**
+     * Wraps a [Sequence], a Java stream or a bare [Iterator] as a single-use [Iterable], so it is
+     * traversed like a list without being copied first; `null` for any other value. A stream is
+     * consumed but not closed.
+     */
+    fun lazyIterable(value: Any?): Iterable<Any?>? =
+        when (value) {
+            is Sequence<*> -> SingleUse(value.iterator())
+            is BaseStream<*, *> -> SingleUse(value.iterator())
+            is Iterator<*> -> SingleUse(value)
+            else -> null
+        }
+
+    private fun isLazyIterable(value: Any?): Boolean =
+        value is Sequence<*> || value is BaseStream<*, *> || value is Iterator<*>
+
+    /** `true` for values traversed as lists that the flat and linear-chain paths cannot write. */
+    private fun isListLike(value: Any?): Boolean =
+        isLazyIterable(value) || PrimitiveArrays.size(value) >= 0
+
+    private class SingleUse(private val source: Iterator<Any?>) : Iterable<Any?> {
+        override fun iterator(): Iterator<Any?> = source
+    }
+
+    /**
+     * The exact children of [selection] present in [obj]: String keys of a Map, or in-range
+     * indices of a list or array.
+     */
+    private fun selectedKeys(
+        obj: Any?,
+        selection: PathTrie,
+        iterableList: List<Any?>?,
+    ): MutableList<Any?> {
+        val size =
+            when (obj) {
+                is Map<*, *> -> return selectedMapKeys(obj, selection.names)
+                is Collection<*> -> obj.size
+                is Array<*> -> obj.size
+                else -> iterableList?.size ?: 0
+            }
+        val keys = ArrayList<Any?>(selection.indices.size)
+        for (index in selection.indices) {
+            if (index < size) keys.add(index)
+        }
+        return keys
+    }
+
+    /**
+     * The keys of [map] named by [names], in the order of [names]. A name matches a String key
+     * exactly or, failing that, any other key whose `toString()` equals it (`1` for `"1"`).
+     */
+    fun selectedMapKeys(map: Map<*, *>, names: List<String>): MutableList<Any?> {
+        val keys = ArrayList<Any?>(names.size)
+        var byText: Map<String, Any?>? = null
+        for (name in names) {
+            if (map.containsKey(name)) {
+                keys.add(name)
+                continue
+            }
+            val other =
+                byText
+                    ?: map.keys
+                        .filter { it !is String }
+                        .associateBy { it.toString() }
+                        .also { byText = it }
+            if (other.containsKey(name)) keys.add(other[name])
+        }
+        return keys
+    }
+
+    /** Encode a leaf value, taking booleans, integers and enums from [Literals] when possible. */
+    private fun encodeLeaf(value: Any?, context: TraversalContext, encoder: ValueEncoder): String =
+        (if (context.defaultEncoder) Literals.encoded(value) else null)
+            ?: encoder.invoke(value, context.charset, context.format)
+
+    /**
+     * Writes a flat root map (String keys, no nested Map or Iterable values) straight into [out],
+     * joined by the delimiter, without copying the map or starting a traversal per key. The output
+     * equals what the general path produces for the same map. Returns `false`, leaving [out]
+     * untouched, when [map] is not flat; callers must have ruled out `filter` and `sort`.
+     */
+    fun tryEncodeFlat(
+        map: Map<*, *>,
+        options: EncodeOptions,
+        deadline: Deadline?,
+        out: StringBuilder,
+    ): Boolean {
+        if (map.isEmpty()) return false
+        val writers = options.typeWriters
+        for ((key, value) in map) {
+            if (key !is String) return false
+            if (
+                value != null &&
+                    (value is Map<*, *> || value is Iterable<*> || isListLike(value)) &&
+                    writers?.handles(value.javaClass) != true
+            ) {
+                return false
+            }
+        }
+
+        val formatter = options.formatter
+        val delimiter = options.delimiter.value
+        var first = true
+
+        val encodeKeys = options.encode && !options.encodeValuesOnly
+        val literals = !options.encode || !options.hasCustomEncoder
+
+        for ((key, raw) in map) {
+            deadline?.tick()
+            key as String
+            if (raw == null && options.skipNulls) continue
+
+            val keyOnly = raw == null && options.strictNullHandling
+            val written = if (raw != null) writers?.write(raw) else null
+            val value: Any =
+                when {
+                    written != null -> written
+                    raw == null -> ""
+                    raw is LocalDateTime -> options.getDateSerializer(raw)
+                    else -> raw
+                }
+            // Values the traversal would not emit (Undefined, or empty with skipNulls).
+            if (
+                !keyOnly &&
+                    !Utils.isNonNullishPrimitive(value, options.skipNulls) &&
+                    value !is ByteArray &&
+                    value !is ByteBuffer
+            ) {
+                continue
+            }
+
+            if (!first) out.append(delimiter)
+            first = false
+            val keyText =
+                if (encodeKeys) options.getEncoder(key, options.charset, options.format) else key
+            out.append(formatter(keyText))
+            if (keyOnly) continue
+
+            out.append('=')
+            when {
+                // Digits are unreserved, so neither encoding nor formatting changes them.
+                literals && Literals.isIntegral(value) -> out.append((value as Number).toLong())
+                options.encode ->
+                    out.append(
+                        formatter(
+                            (if (literals) Literals.encoded(value) else null)
+                                ?: options.getEncoder(value, options.charset, options.format)
+                        )
+                    )
+                else ->
+                    out.append(
+                        formatter(
+                            Utils.bytesToString(value, options.charset)
+                                ?: Literals.encoded(value)
+                                ?: value.toString()
+                        )
+                    )
+            }
+        }
+        return true
+    }
+
+    private fun depthExceeded(limit: Int): IndexOutOfBoundsException =
+        IndexOutOfBoundsException(
+            "Maximum encoding depth of $limit exceeded. The input may be cyclic."
+        )
+
+    /** Path of list element [index]; small indices share their "[i]" segment and its encoding. */
+    private fun indexChildPath(
+        adjustedPath: KeyPathNode,
+        index: Int,
+        generator: ListFormatGenerator,
+    ): KeyPathNode =
+        if (index < indexSegments.size && generator === indicesGenerator) {
+            adjustedPath.append(indexSegments[index], encodedIndexSegments[index])
+        } else {
+            buildSequenceChildPath(adjustedPath, index.toString(), generator)
+        }
+
     private fun buildSequenceChildPath(
         adjustedPath: KeyPathNode,
         encodedKey: String,
@@ -520,6 +995,8 @@ internal object Encoder {
         undefined: Boolean,
         prefix: String,
         context: TraversalContext,
+        deadline: Deadline?,
+        depthLimit: Int,
     ): Any? {
         if (
             undefined ||
@@ -533,15 +1010,24 @@ internal object Encoder {
         )
             return null
 
-        val seen = Collections.newSetFromMap(IdentityHashMap<Any?, Boolean>())
+        // A registered type is a leaf even when it is a Map.
+        val writers = context.typeWriters
+        if (writers != null && writers.handles(data.javaClass)) return null
+
+        val seen = if (depthLimit < 0) Scratch.borrowIdentitySet() else null
         var current: Any? = data
         var path = KeyPathNode.fromMaterialized(prefix)
+        var depth = 0
 
-        while (current is Map<*, *>) {
-            if (!seen.add(current)) {
+        while (current is Map<*, *> && (writers == null || !writers.handles(current.javaClass))) {
+            deadline?.tick()
+            if (seen == null) {
+                if (++depth > depthLimit) throw depthExceeded(depthLimit)
+            } else if (!seen.add(current)) {
                 throw IndexOutOfBoundsException("Cyclic object value")
             }
             if (current.size != 1) {
+                seen?.let(Scratch::releaseIdentitySet)
                 return null
             }
 
@@ -560,8 +1046,11 @@ internal object Encoder {
 
             current = entry.value
         }
+        seen?.let(Scratch::releaseIdentitySet)
 
         var leaf = current
+        val written = if (writers != null && leaf != null) writers.write(leaf) else null
+        if (written != null) leaf = written
         if (leaf is LocalDateTime) {
             leaf = context.serializeDate?.invoke(leaf) ?: leaf.toString()
         }
@@ -585,6 +1074,9 @@ internal object Encoder {
         if (leaf is Undefined) {
             return emptyList<Any?>()
         }
+        if (isListLike(leaf)) {
+            return null
+        }
 
         if (
             Utils.isNonNullishPrimitive(leaf, context.skipNulls) ||
@@ -601,10 +1093,13 @@ internal object Encoder {
                                 context.charset,
                                 context.format,
                             )
-                    val encodedValue = context.encoder.invoke(leaf, context.charset, context.format)
+                    val encodedValue = encodeLeaf(leaf, context, context.encoder)
                     "${context.formatter(keyValue)}=${context.formatter(encodedValue)}"
                 } else {
-                    val rawValue = Utils.bytesToString(leaf, context.charset) ?: leaf.toString()
+                    val rawValue =
+                        Utils.bytesToString(leaf, context.charset)
+                            ?: Literals.encoded(leaf)
+                            ?: leaf.toString()
                     "${context.formatter(path.materialize())}=${context.formatter(rawValue)}"
                 }
             return listOf(fragment)
@@ -1,23 +1,43 @@
 package io.github.techouse.qskotlin.internal
 
+import io.github.techouse.qskotlin.enums.Format
+import java.nio.charset.Charset
+
 /**
  * Linked-node representation of an encoder key path.
  *
  * Public behavior is logically immutable (append/create operations return nodes rather than mutate
  * path structure), but this type uses unsynchronized internal memoization (`dotEncoded`,
- * `materialized`) for speed. It is intended for single-threaded encoder traversal and should not be
- * shared across threads without external synchronization.
+ * `materialized`, `encoded`) for speed. It is intended for single-threaded encoder traversal and
+ * should not be shared across threads without external synchronization.
  */
 internal class KeyPathNode
-private constructor(private val parent: KeyPathNode?, private val segment: String) {
+private constructor(
+    private val parent: KeyPathNode?,
+    private val segment: String,
+    private val encodedSegment: String? = null,
+) {
     private var dotEncoded: KeyPathNode? = null
     private var materialized: String? = null
+    private var encoded: String? = null
 
     private val depth: Int = (parent?.depth ?: 0) + 1
     private val totalLength: Int = (parent?.totalLength ?: 0) + segment.length
 
+    /** Length of [materialize] without building it. */
+    val length: Int
+        get() = totalLength
+
+    /** The last appended segment, e.g. `[b]` or `.b`; the whole key for a root node. */
+    val lastSegment: String
+        get() = segment
+
     fun append(value: String): KeyPathNode = if (value.isEmpty()) this else KeyPathNode(this, value)
 
+    /** Append [value] whose percent-encoded form [encodedValue] is already known. */
+    fun append(value: String, encodedValue: String): KeyPathNode =
+        KeyPathNode(this, value, encodedValue)
+
     fun asDotEncoded(): KeyPathNode {
         dotEncoded?.let {
             return it
@@ -75,6 +95,106 @@ private constructor(private val parent: KeyPathNode?, private val segment: Strin
         return out
     }
 
+    /** Character at [index] of [materialize], found by walking up the segments. */
+    fun charAt(index: Int): Char {
+        materialized?.let {
+            return it[index]
+        }
+        if (index < 0 || index >= totalLength) {
+            throw IndexOutOfBoundsException("index: $index, length: $totalLength")
+        }
+
+        var node = this
+        while (true) {
+            val start = node.totalLength - node.segment.length
+            if (index >= start) return node.segment[index - start]
+            node = node.parent!!
+        }
+    }
+
+    /**
+     * Whether [other] occurs in [materialize] at [offset]. Segments are compared from the end of
+     * the region backwards, so the path is not built.
+     */
+    fun regionMatches(offset: Int, other: CharSequence): Boolean {
+        val end = offset + other.length
+        if (offset < 0 || end > totalLength) return false
+        materialized?.let {
+            return it.regionMatches(offset, other.toString(), 0, other.length)
+        }
+
+        var node = this
+        var i = other.length - 1
+        var position = end - 1
+        while (i >= 0) {
+            val start = node.totalLength - node.segment.length
+            if (position < start) {
+                node = node.parent!!
+                continue
+            }
+            if (node.segment[position - start] != other[i]) return false
+            position--
+            i--
+        }
+        return true
+    }
+
+    /**
+     * Percent-encoded form of [materialize], as `Utils.encode` would produce it.
+     *
+     * Percent-encoding works character by character, so the path is encoded as the parent's
+     * encoded prefix plus this segment. The parent's prefix is memoized, so siblings only encode
+     * their own segment. The memo assumes a single [charset] and [format] per traversal.
+     */
+    fun encoded(charset: Charset, format: Format): String {
+        encoded?.let {
+            return it
+        }
+
+        val out =
+            when (parent) {
+                null -> segmentEncoded(charset, format)
+                else -> {
+                    val prefix =
+                        parent.encoded
+                            ?: parent.encodeBelowMemo(charset, format).also { parent.encoded = it }
+                    prefix + segmentEncoded(charset, format)
+                }
+            }
+
+        encoded = out
+        return out
+    }
+
+    private fun segmentEncoded(charset: Charset, format: Format): String =
+        encodedSegment ?: Utils.encode(segment, charset, format)
+
+    /**
+     * Encode this path from the nearest ancestor with a memoized encoding (or the root). Only this
+     * node memoizes the result, so a deep chain does not keep one copy per level.
+     */
+    private fun encodeBelowMemo(charset: Charset, format: Format): String {
+        val chain = ArrayList<KeyPathNode>()
+        var base = ""
+        var node: KeyPathNode? = this
+        while (node != null) {
+            val memo = node.encoded
+            if (memo != null) {
+                base = memo
+                break
+            }
+            chain.add(node)
+            node = node.parent
+        }
+
+        return buildString {
+            append(base)
+            for (i in chain.indices.reversed()) {
+                append(chain[i].segmentEncoded(charset, format))
+            }
+        }
+    }
+
     companion object {
         fun fromMaterialized(value: String): KeyPathNode = KeyPathNode(null, value)
 
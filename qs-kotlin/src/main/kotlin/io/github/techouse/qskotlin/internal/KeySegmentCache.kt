@@ -0,0 +1,41 @@
+package io.github.techouse.qskotlin.internal
+
+import io.github.techouse.qskotlin.models.DecodeOptions
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Thread-safe memo of [Decoder.splitKeyIntoSegments] results for one batch of decodes sharing the
+ * same [DecodeOptions].
+ *
+ * Access-log keys such as `filter[status]` repeat across millions of queries; splitting each one
+ * once per batch saves the bracket scan and the segment substrings. At most [maxEntries] keys are
+ * remembered, after which new keys are split without being stored. Cached lists are shared and
+ * must not be mutated.
+ */
+internal class KeySegmentCache(
+    private val options: DecodeOptions,
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+) {
+    private val entries = ConcurrentHashMap<String, List<String>>()
+
+    /** Returns the segments of [key], splitting and remembering them on first use. */
+    fun segments(key: String): List<String> {
+        entries[key]?.let {
+            return it
+        }
+
+        val segments =
+            Decoder.splitKeyIntoSegments(
+                originalKey = key,
+                allowDots = options.getAllowDots,
+                maxDepth = options.depth,
+                strictDepth = options.strictDepth,
+            )
+        if (entries.size < maxEntries) entries.putIfAbsent(key, segments)
+        return segments
+    }
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES: Int = 65_536
+    }
+}
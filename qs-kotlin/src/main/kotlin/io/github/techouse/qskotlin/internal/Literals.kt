@@ -0,0 +1,48 @@
+package io.github.techouse.qskotlin.internal
+
+/**
+ * Pre-encoded forms of leaf values whose default encoding never changes: booleans, integral
+ * numbers and enum constants.
+ *
+ * Every string handed out here consists of letters, digits, `-`, `.` and `_` only: the characters
+ * that neither the UTF-8 nor the ISO-8859-1 escaper touches in any format, so each string is its
+ * own percent-encoding (`~` is left out because the ISO-8859-1 escaper encodes it). Enum tables are
+ * built lazily per enum class from each constant's `toString()`; a constant whose text would need
+ * escaping has no entry.
+ */
+internal object Literals {
+    private val smallInts: Array<String> = Array(1_024) { it.toString() }
+
+    private val enumTables = ClassCache { type ->
+        val constants = type.enumConstants ?: return@ClassCache emptyArray<String?>()
+        Array(constants.size) { i ->
+            constants[i].toString().takeIf { text -> text.all { isUnreserved(it) } }
+        }
+    }
+
+    /**
+     * Returns what `Utils.encode(value)` would return when it is known without encoding, or `null`
+     * when [value] has to be encoded.
+     */
+    fun encoded(value: Any?): String? =
+        when (value) {
+            is Boolean -> if (value) "true" else "false"
+            is Int -> integral(value.toLong())
+            is Long -> integral(value)
+            is Short -> integral(value.toLong())
+            is Byte -> integral(value.toLong())
+            is Enum<*> -> enumTables.get(value.declaringJavaClass).getOrNull(value.ordinal)
+            else -> null
+        }
+
+    /** `true` for the integral boxes whose digits can be appended directly. */
+    fun isIntegral(value: Any?): Boolean =
+        value is Int || value is Long || value is Short || value is Byte
+
+    /** Decimal text of [value], shared for small non-negative values. */
+    fun integral(value: Long): String =
+        if (value >= 0 && value < smallInts.size) smallInts[value.toInt()] else value.toString()
+
+    private fun isUnreserved(c: Char): Boolean =
+        c in 'a'..'z' || c in 'A'..'Z' || c in '0'..'9' || c == '-' || c == '.' || c == '_'
+}
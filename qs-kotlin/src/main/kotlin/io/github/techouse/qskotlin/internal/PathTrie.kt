@@ -0,0 +1,138 @@
+package io.github.techouse.qskotlin.internal
+
+/**
+ * Compiled form of an `AllowlistFilter`: one node per selected key path.
+ *
+ * A node is [terminal] when its whole value is selected. Otherwise only the children reachable
+ * through [child] are: exact names first, then the `*` wildcard. Wildcard patterns are merged into
+ * every exact sibling at compile time, so [child] is a single lookup and never has to combine
+ * branches during encoding. Nodes are immutable once [compile] returns and may be shared across
+ * threads.
+ */
+internal class PathTrie private constructor() {
+    /** `true` when everything below this node is selected. */
+    var terminal: Boolean = false
+        private set
+
+    /** Node matching any key that has no exact entry, or `null` when there is no `*`. */
+    var any: PathTrie? = null
+        private set
+
+    private var children: LinkedHashMap<String, PathTrie>? = null
+
+    /** Exact child names, in the order they first appeared in the patterns. */
+    var names: List<String> = emptyList()
+        private set
+
+    /** Exact child names that are list indices, in the same order as [names]. */
+    var indices: IntArray = EMPTY_INDICES
+        private set
+
+    /** The node selecting the child [name], or `null` when that child is not selected. */
+    fun child(name: String): PathTrie? = children?.get(name) ?: any
+
+    private fun exact(name: String): PathTrie =
+        (children ?: LinkedHashMap<String, PathTrie>().also { children = it }).getOrPut(name) {
+            PathTrie()
+        }
+
+    private fun wildcard(): PathTrie = any ?: PathTrie().also { any = it }
+
+    /** Copy every path selected below [source] into this node. */
+    private fun absorb(source: PathTrie) {
+        if (terminal) return
+        if (source.terminal) {
+            terminal = true
+            return
+        }
+        source.children?.forEach { (name, node) -> exact(name).absorb(node) }
+        source.any?.let { wildcard().absorb(it) }
+    }
+
+    /** Drop what a terminal node makes redundant, merge wildcards and index the children. */
+    private fun finish() {
+        if (terminal) {
+            children = null
+            any = null
+            return
+        }
+
+        val wildcard = any
+        val exact = children
+        if (wildcard != null && exact != null) {
+            for (node in exact.values) node.absorb(wildcard)
+        }
+        exact?.values?.forEach { it.finish() }
+        wildcard?.finish()
+
+        if (exact != null) {
+            names = exact.keys.toList()
+            indices =
+                names
+                    .mapNotNull { name -> name.toIntOrNull()?.takeIf { it >= 0 && "$it" == name } }
+                    .toIntArray()
+        }
+    }
+
+    companion object {
+        private val EMPTY_INDICES = IntArray(0)
+
+        /** Compile [patterns] into a trie; see `AllowlistFilter` for the pattern syntax. */
+        fun compile(patterns: Iterable<String>): PathTrie {
+            val root = PathTrie()
+            for (pattern in patterns) {
+                var node = root
+                for (segment in parse(pattern)) {
+                    if (node.terminal) break
+                    node =
+                        when (segment) {
+                            "**" -> node
+                            "*" -> node.wildcard()
+                            else -> node.exact(segment)
+                        }
+                }
+                node.terminal = true
+            }
+            root.finish()
+            return root
+        }
+
+        /**
+         * Split [pattern] into its segments: a root key followed by `.name` or `[name]` parts.
+         *
+         * @throws IllegalArgumentException when the pattern is empty or malformed, or when `**` is
+         *   not its last segment.
+         */
+        fun parse(pattern: String): List<String> {
+            require(pattern.isNotEmpty()) { "Path pattern must not be empty" }
+
+            val segments = ArrayList<String>()
+            var i = 0
+            while (i < pattern.length) {
+                if (pattern[i] == '[') {
+                    val close = pattern.indexOf(']', i + 1)
+                    require(close > i + 1) { "Malformed brackets in path pattern: $pattern" }
+                    segments.add(pattern.substring(i + 1, close))
+                    i = close + 1
+                    continue
+                }
+
+                if (pattern[i] == '.') {
+                    require(segments.isNotEmpty()) { "Path pattern starts with '.': $pattern" }
+                    i++
+                }
+                var end = i
+                while (end < pattern.length && pattern[end] != '.' && pattern[end] != '[') end++
+                require(end > i) { "Empty segment in path pattern: $pattern" }
+                segments.add(pattern.substring(i, end))
+                i = end
+            }
+
+            val globstar = segments.indexOf("**")
+            require(globstar < 0 || globstar == segments.lastIndex) {
+                "'**' must be the last segment of a path pattern: $pattern"
+            }
+            return segments
+        }
+    }
+}
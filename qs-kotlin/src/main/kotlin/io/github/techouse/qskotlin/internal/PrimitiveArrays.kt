@@ -0,0 +1,55 @@
+package io.github.techouse.qskotlin.internal
+
+/**
+ * Element access for JVM primitive arrays (`IntArray`, `DoubleArray`, ...), which the encoder
+ * treats as lists. `ByteArray` is not one of them: it is a binary value.
+ *
+ * [text] reads an element straight from the array, without boxing, as the text its boxed value's
+ * `toString()` would give. Only [CharArray] elements can need percent-encoding; digits, signs,
+ * `.`, `E`, `NaN`, `Infinity`, `true` and `false` are all unreserved.
+ */
+internal object PrimitiveArrays {
+    /** Number of elements when [value] is a supported primitive array, otherwise `-1`. */
+    fun size(value: Any?): Int =
+        when (value) {
+            is IntArray -> value.size
+            is LongArray -> value.size
+            is DoubleArray -> value.size
+            is FloatArray -> value.size
+            is ShortArray -> value.size
+            is BooleanArray -> value.size
+            is CharArray -> value.size
+            else -> -1
+        }
+
+    fun text(array: Any, index: Int): String =
+        when (array) {
+            is IntArray -> Literals.integral(array[index].toLong())
+            is LongArray -> Literals.integral(array[index])
+            is DoubleArray -> array[index].toString()
+            is FloatArray -> array[index].toString()
+            is ShortArray -> Literals.integral(array[index].toLong())
+            is BooleanArray -> if (array[index]) "true" else "false"
+            is CharArray -> array[index].toString()
+            else -> throw IllegalArgumentException("Not a primitive array: ${array.javaClass}")
+        }
+
+    /** `true` when element texts of [array] may contain characters that must be escaped. */
+    fun needsEncoding(array: Any): Boolean = array is CharArray
+
+    /** Element texts of [array], e.g. for a comma-joined list. */
+    fun texts(array: Any): List<String> = List(size(array)) { text(array, it) }
+
+    /** A boxing List view of [array], for options that look at element values. */
+    fun boxed(array: Any): List<Any?> =
+        when (array) {
+            is IntArray -> array.asList()
+            is LongArray -> array.asList()
+            is DoubleArray -> array.asList()
+            is FloatArray -> array.asList()
+            is ShortArray -> array.asList()
+            is BooleanArray -> array.asList()
+            is CharArray -> array.asList()
+            else -> throw IllegalArgumentException("Not a primitive array: ${array.javaClass}")
+        }
+}
@@ -0,0 +1,117 @@
+package io.github.techouse.qskotlin.internal
+
+import java.util.IdentityHashMap
+
+/**
+ * Per-thread scratch buffers reused by the decode and encode hot paths.
+ *
+ * Each platform thread owns a small [Arena]: a stack of [StringBuilder]s (so nested borrows, such
+ * as `Utils.encode` running inside `QS.encode`, each get their own) and an identity set for cycle
+ * detection. Borrowing resets the buffer; releasing hands it back unless it grew beyond
+ * [MAX_RETAINED_CHARS] or [MAX_RETAINED_IDENTITIES], so one huge request does not pin memory for
+ * the lifetime of the thread.
+ *
+ * Virtual threads are short-lived and numerous, so per-thread arenas would only add footprint;
+ * they (and borrows nested deeper than the arena holds) get fresh, unpooled instances instead.
+ */
+internal object Scratch {
+    private const val MAX_NESTING = 4
+    private const val INITIAL_CHARS = 256
+    private const val MAX_RETAINED_CHARS = 16 * 1024
+    private const val MAX_RETAINED_IDENTITIES = 1_024
+
+    private val virtualThreadClass: Class<*>? =
+        try {
+            Class.forName("java.lang.VirtualThread")
+        } catch (_: ClassNotFoundException) {
+            null
+        }
+
+    private val arenas = ThreadLocal.withInitial { Arena() }
+
+    private class Arena {
+        val builders = arrayOfNulls<StringBuilder>(MAX_NESTING)
+        var buildersInUse = 0
+        var identities: IdentitySet? = null
+    }
+
+    /** Identity-based set that remembers its peak size, so a grown table can be discarded. */
+    internal class IdentitySet : AbstractMutableSet<Any?>() {
+        private val map = IdentityHashMap<Any?, Unit>()
+        var peak = 0
+            private set
+
+        override val size: Int
+            get() = map.size
+
+        override fun add(element: Any?): Boolean {
+            if (map.put(element, Unit) != null) return false
+            if (map.size > peak) peak = map.size
+            return true
+        }
+
+        override fun remove(element: Any?): Boolean = map.remove(element) != null
+
+        override fun contains(element: Any?): Boolean = map.containsKey(element)
+
+        override fun iterator(): MutableIterator<Any?> = map.keys.iterator()
+
+        override fun clear() {
+            map.clear()
+            peak = 0
+        }
+    }
+
+    private fun arena(): Arena? {
+        val thread = Thread.currentThread()
+        return if (virtualThreadClass != null && thread.javaClass === virtualThreadClass) null
+        else arenas.get()
+    }
+
+    /** Run [block] with an empty [StringBuilder] that is returned to the arena afterwards. */
+    inline fun <T> withBuilder(block: (StringBuilder) -> T): T {
+        val builder = borrowBuilder()
+        try {
+            return block(builder)
+        } finally {
+            releaseBuilder(builder)
+        }
+    }
+
+    /** Borrow an empty [StringBuilder]; pair with [releaseBuilder] in LIFO order. */
+    fun borrowBuilder(): StringBuilder {
+        val arena = arena() ?: return StringBuilder()
+        if (arena.buildersInUse == MAX_NESTING) return StringBuilder()
+
+        val index = arena.buildersInUse++
+        val builder =
+            arena.builders[index]
+                ?: StringBuilder(INITIAL_CHARS).also { arena.builders[index] = it }
+        builder.setLength(0)
+        return builder
+    }
+
+    /** Return [builder] to the arena unless it outgrew the retention cap. */
+    fun releaseBuilder(builder: StringBuilder) {
+        val arena = arena() ?: return
+        val index = arena.buildersInUse - 1
+        if (index < 0 || arena.builders[index] !== builder) return
+
+        arena.buildersInUse = index
+        if (builder.capacity() > MAX_RETAINED_CHARS) arena.builders[index] = null
+    }
+
+    /** Borrow an empty identity set for cycle detection; pair with [releaseIdentitySet]. */
+    fun borrowIdentitySet(): IdentitySet {
+        val arena = arena() ?: return IdentitySet()
+        return arena.identities?.also { arena.identities = null } ?: IdentitySet()
+    }
+
+    /** Return [set] to the arena unless it outgrew the retention cap. */
+    fun releaseIdentitySet(set: IdentitySet) {
+        val arena = arena() ?: return
+        if (set.peak > MAX_RETAINED_IDENTITIES) return
+        set.clear()
+        arena.identities = set
+    }
+}
@@ -79,9 +79,17 @@ internal object Utils {
      * @param target The target object to merge into.
      * @param source The source object to merge from.
      * @param options Optional decode options for merging behavior.
+     * @param budget Optional decode budget. Every List created to hold a scalar conflict is
+     *   charged to it (once exhausted, such sources are dropped and the target is kept), and each
+     *   merge step counts against its time budget.
      * @return The merged object.
      */
-    fun merge(target: Any?, source: Any?, options: DecodeOptions = DecodeOptions()): Any? {
+    fun merge(
+        target: Any?,
+        source: Any?,
+        options: DecodeOptions = DecodeOptions(),
+        budget: DecodeBudget? = null,
+    ): Any? {
         var result: Any? = null
         val stack = ArrayDeque<MergeFrame>()
 
@@ -116,6 +124,7 @@ internal object Utils {
         }
 
         while (stack.isNotEmpty()) {
+            budget?.tick()
             val frame = stack.last()
 
             when (frame.phase) {
@@ -251,7 +260,13 @@ internal object Utils {
                                         !isFalsyPrimitiveForMerge(currentSource)
                                 ) {
                                     stack.removeLast()
-                                    frame.onResult(listOf(currentTarget, currentSource))
+                                    frame.onResult(
+                                        if (budget == null || budget.chargeNodes(1)) {
+                                            listOf(currentTarget, currentSource)
+                                        } else {
+                                            currentTarget
+                                        }
+                                    )
                                     continue
                                 }
                                 val mutableTarget = currentTarget.toMutableMap()
@@ -274,6 +289,11 @@ internal object Utils {
                             }
 
                             else -> {
+                                if (budget != null && !budget.chargeNodes(1)) {
+                                    stack.removeLast()
+                                    frame.onResult(currentTarget)
+                                    continue
+                                }
                                 val merged =
                                     when (currentSource) {
                                         is Iterable<*> ->
@@ -627,22 +647,112 @@ internal object Utils {
             String(bytes, charset)
         }
 
-    /** Extract bytes from a ByteBuffer without mutating its position. */
-    private fun byteBufferToArray(buffer: ByteBuffer): ByteArray {
-        val dup = buffer.duplicate()
-        val out = ByteArray(dup.remaining())
-        dup.get(out)
-        return out
-    }
+    /** Decode the remaining bytes of [buffer] without mutating its position or copying them. */
+    private fun decodeBuffer(buffer: ByteBuffer, charset: Charset): String =
+        charset
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(buffer.duplicate())
+            .toString()
 
     /** Coerce ByteArray/ByteBuffer to String using the supplied charset; null otherwise. */
     internal fun bytesToString(value: Any?, charset: Charset): String? =
         when (value) {
             is ByteArray -> decodeBytes(value, charset)
-            is ByteBuffer -> decodeBytes(byteBufferToArray(value), charset)
+            is ByteBuffer -> decodeBuffer(value, charset)
             else -> null
         }
 
+    /**
+     * Percent-encodes well-formed UTF-8 [bytes] directly, which equals decoding them and encoding
+     * the resulting String. Returns `null` on malformed input, so the caller can decode with
+     * replacement characters first and keep the exact replacement semantics.
+     */
+    private fun encodeUtf8Bytes(bytes: Any, format: Format): String? =
+        when (bytes) {
+            is ByteArray -> percentEncodeUtf8(bytes.size, format) { bytes[it].toInt() and 0xFF }
+            is ByteBuffer ->
+                if (bytes.hasArray()) {
+                    val array = bytes.array()
+                    val offset = bytes.arrayOffset() + bytes.position()
+                    percentEncodeUtf8(bytes.remaining(), format) {
+                        array[offset + it].toInt() and 0xFF
+                    }
+                } else {
+                    val position = bytes.position()
+                    percentEncodeUtf8(bytes.remaining(), format) {
+                        bytes.get(position + it).toInt() and 0xFF
+                    }
+                }
+
+            else -> null
+        }
+
+    private inline fun percentEncodeUtf8(
+        length: Int,
+        format: Format,
+        byteAt: (Int) -> Int,
+    ): String? {
+        if (length == 0) return ""
+
+        return Scratch.withBuilder { buffer ->
+            var i = 0
+            while (i < length) {
+                val b = byteAt(i)
+                if (b < 0x80) {
+                    if (isUnreserved(b, format)) {
+                        buffer.append(b.toChar())
+                    } else {
+                        buffer.append(HexTable[b])
+                    }
+                    i++
+                    continue
+                }
+
+                // Lead byte ranges and the allowed range of the first continuation byte exclude
+                // overlong forms, surrogates and code points above U+10FFFF, like the JDK decoder.
+                val count: Int
+                var low = 0x80
+                var high = 0xBF
+                when (b) {
+                    in 0xC2..0xDF -> count = 1
+                    0xE0 -> {
+                        count = 2
+                        low = 0xA0
+                    }
+                    in 0xE1..0xEC,
+                    0xEE,
+                    0xEF -> count = 2
+                    0xED -> {
+                        count = 2
+                        high = 0x9F
+                    }
+                    0xF0 -> {
+                        count = 3
+                        low = 0x90
+                    }
+                    in 0xF1..0xF3 -> count = 3
+                    0xF4 -> {
+                        count = 3
+                        high = 0x8F
+                    }
+                    else -> return@withBuilder null
+                }
+                if (i + count >= length) return@withBuilder null
+                val second = byteAt(i + 1)
+                if (second < low || second > high) return@withBuilder null
+                for (k in 2..count) {
+                    if (byteAt(i + k) and 0xC0 != 0x80) return@withBuilder null
+                }
+
+                for (k in 0..count) buffer.append(HexTable[byteAt(i + k)])
+                i += count + 1
+            }
+            buffer.toString()
+        }
+    }
+
     /**
      * Encodes a value into a URL-encoded string.
      *
@@ -664,6 +774,12 @@ internal object Utils {
             return ""
         }
 
+        if ((value is ByteArray || value is ByteBuffer) && charset == StandardCharsets.UTF_8) {
+            encodeUtf8Bytes(value, format)?.let {
+                return it
+            }
+        }
+
         val str =
             when (value) {
                 is ByteBuffer -> bytesToString(value, charset)
@@ -684,108 +800,122 @@ internal object Utils {
             }
         }
 
-        val buffer = StringBuilder()
+        // Most keys and values are plain ASCII words; return them without building anything.
+        if (str.all { isUnreserved(it.code, format) }) {
+            return str
+        }
 
-        var j = 0
-        while (j < str.length) {
-            var end = minOf(j + SEGMENT_LIMIT, str.length)
-            if (end < str.length) {
-                val last = str[end - 1]
-                val next = str[end]
-                // Avoid splitting a surrogate pair across segment boundaries.
-                if (last in '\uD800'..'\uDBFF' && next in '\uDC00'..'\uDFFF') {
-                    end -= 1 // keep surrogate pair together
+        return Scratch.withBuilder { buffer ->
+            var j = 0
+            while (j < str.length) {
+                var end = minOf(j + SEGMENT_LIMIT, str.length)
+                if (end < str.length) {
+                    val last = str[end - 1]
+                    val next = str[end]
+                    // Avoid splitting a surrogate pair across segment boundaries.
+                    if (last in '\uD800'..'\uDBFF' && next in '\uDC00'..'\uDFFF') {
+                        end -= 1 // keep surrogate pair together
+                    }
                 }
-            }
-            val segment = str.substring(j, end)
+                var i = j
+                while (i < end) {
+                    val c = str[i].code
+
+                    when (c) {
+                        0x2D, // -
+                        0x2E, // .
+                        0x5F, // _
+                        0x7E, // ~
+                        in 0x30..0x39, // 0-9
+                        in 0x41..0x5A, // A-Z
+                        in 0x61..0x7A -> { // a-z
+                            buffer.append(str[i])
+                            i++
+                            continue
+                        }
 
-            var i = 0
-            while (i < segment.length) {
-                val c = segment[i].code
-
-                when (c) {
-                    0x2D, // -
-                    0x2E, // .
-                    0x5F, // _
-                    0x7E, // ~
-                    in 0x30..0x39, // 0-9
-                    in 0x41..0x5A, // A-Z
-                    in 0x61..0x7A -> { // a-z
-                        buffer.append(segment[i])
-                        i++
-                        continue
+                        0x28,
+                        0x29 -> { // ( )
+                            if (format == Format.RFC1738) {
+                                buffer.append(str[i])
+                                i++
+                                continue
+                            }
+                        }
                     }
 
-                    0x28,
-                    0x29 -> { // ( )
-                        if (format == Format.RFC1738) {
-                            buffer.append(segment[i])
+                    when {
+                        c < 0x80 -> { // ASCII
+                            buffer.append(HexTable[c])
                             i++
                             continue
                         }
-                    }
-                }
-
-                when {
-                    c < 0x80 -> { // ASCII
-                        buffer.append(HexTable[c])
-                        i++
-                        continue
-                    }
 
-                    c < 0x800 -> { // 2 bytes
-                        buffer.append(HexTable[0xC0 or (c shr 6)])
-                        buffer.append(HexTable[0x80 or (c and 0x3F)])
-                        i++
-                        continue
-                    }
+                        c < 0x800 -> { // 2 bytes
+                            buffer.append(HexTable[0xC0 or (c shr 6)])
+                            buffer.append(HexTable[0x80 or (c and 0x3F)])
+                            i++
+                            continue
+                        }
 
-                    c in 0xD800..0xDBFF -> { // high surrogate
-                        if (i + 1 < segment.length) {
-                            val nextC = segment[i + 1].code
-                            if (nextC in 0xDC00..0xDFFF) {
-                                val codePoint =
-                                    0x10000 + (((c - 0xD800) shl 10) or (nextC - 0xDC00))
-                                buffer.append(HexTable[0xF0 or (codePoint shr 18)])
-                                buffer.append(HexTable[0x80 or ((codePoint shr 12) and 0x3F)])
-                                buffer.append(HexTable[0x80 or ((codePoint shr 6) and 0x3F)])
-                                buffer.append(HexTable[0x80 or (codePoint and 0x3F)])
-                                i += 2
-                                continue
+                        c in 0xD800..0xDBFF -> { // high surrogate
+                            if (i + 1 < end) {
+                                val nextC = str[i + 1].code
+                                if (nextC in 0xDC00..0xDFFF) {
+                                    val codePoint =
+                                        0x10000 + (((c - 0xD800) shl 10) or (nextC - 0xDC00))
+                                    buffer.append(HexTable[0xF0 or (codePoint shr 18)])
+                                    buffer.append(HexTable[0x80 or ((codePoint shr 12) and 0x3F)])
+                                    buffer.append(HexTable[0x80 or ((codePoint shr 6) and 0x3F)])
+                                    buffer.append(HexTable[0x80 or (codePoint and 0x3F)])
+                                    i += 2
+                                    continue
+                                }
                             }
+                            // Lone high surrogate: encode code unit as 3-byte sequence.
+                            buffer.append(HexTable[0xE0 or (c shr 12)])
+                            buffer.append(HexTable[0x80 or ((c shr 6) and 0x3F)])
+                            buffer.append(HexTable[0x80 or (c and 0x3F)])
+                            i++
+                            continue
                         }
-                        // Lone high surrogate: encode code unit as 3-byte sequence.
-                        buffer.append(HexTable[0xE0 or (c shr 12)])
-                        buffer.append(HexTable[0x80 or ((c shr 6) and 0x3F)])
-                        buffer.append(HexTable[0x80 or (c and 0x3F)])
-                        i++
-                        continue
-                    }
 
-                    c in 0xDC00..0xDFFF -> { // lone low surrogate
-                        buffer.append(HexTable[0xE0 or (c shr 12)])
-                        buffer.append(HexTable[0x80 or ((c shr 6) and 0x3F)])
-                        buffer.append(HexTable[0x80 or (c and 0x3F)])
-                        i++
-                        continue
-                    }
+                        c in 0xDC00..0xDFFF -> { // lone low surrogate
+                            buffer.append(HexTable[0xE0 or (c shr 12)])
+                            buffer.append(HexTable[0x80 or ((c shr 6) and 0x3F)])
+                            buffer.append(HexTable[0x80 or (c and 0x3F)])
+                            i++
+                            continue
+                        }
 
-                    else -> { // 3 bytes
-                        buffer.append(HexTable[0xE0 or (c shr 12)])
-                        buffer.append(HexTable[0x80 or ((c shr 6) and 0x3F)])
-                        buffer.append(HexTable[0x80 or (c and 0x3F)])
-                        i++
-                        continue
+                        else -> { // 3 bytes
+                            buffer.append(HexTable[0xE0 or (c shr 12)])
+                            buffer.append(HexTable[0x80 or ((c shr 6) and 0x3F)])
+                            buffer.append(HexTable[0x80 or (c and 0x3F)])
+                            i++
+                            continue
+                        }
                     }
                 }
+
+                j = end
             }
 
-            j = end
+            buffer.toString()
         }
-
-        return buffer.toString()
     }
 
+    /** `true` for characters [encode] copies through unchanged. */
+    private fun isUnreserved(c: Int, format: Format): Boolean =
+        c == 0x2D ||
+            c == 0x2E ||
+            c == 0x5F ||
+            c == 0x7E ||
+            c in 0x30..0x39 ||
+            c in 0x41..0x5A ||
+            c in 0x61..0x7A ||
+            (format == Format.RFC1738 && (c == 0x28 || c == 0x29))
+
     /**
      * Decodes a URL-encoded string into its original form.
      *
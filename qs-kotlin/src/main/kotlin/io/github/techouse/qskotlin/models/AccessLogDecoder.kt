@@ -0,0 +1,239 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.internal.BatchDecoder
+import io.github.techouse.qskotlin.internal.ByteScanner
+import io.github.techouse.qskotlin.internal.Decoder
+import io.github.techouse.qskotlin.internal.KeySegmentCache
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.BiConsumer
+
+/**
+ * Extracts and decodes the query strings of a large access-log file.
+ *
+ * The file is split into line-aligned regions of about [regionBytes] bytes. Each region is
+ * memory-mapped with `FileChannel.map` and scanned on [executor]: in every line the query starts
+ * after the first [prefix] and ends before the next [terminator] (or the end of the line). Only
+ * that byte slice is turned into a String, so no per-line Strings are built. Lines without
+ * [prefix] are skipped.
+ *
+ * Regions run in parallel, so the callback is invoked concurrently from worker threads and must be
+ * thread-safe. Within a region, lines are delivered in file order; the byte offset of each line
+ * identifies it globally. All regions share one key-segment cache and one [StringPool] (unless
+ * [options] carries one), like `QS.decodeAll`.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * // 10.0.0.1 - - [..] "GET /search?q=shoes&page=2 HTTP/1.1" 200 512
+ * val logs = AccessLogDecoder(prefix = "?", terminator = " ")
+ * val stats = logs.decode(Path.of("access.log")) { offset, query -> sink.add(offset, query) }
+ * ```
+ *
+ * Java:
+ * ```java
+ * AccessLogDecoder logs = new AccessLogDecoder(options, "?", " ");
+ * logs.decodePathTables(path, (offset, table) -> table.forEach((p, v) -> sink.add(offset, p, v)));
+ * ```
+ *
+ * Java sees only the `BiConsumer` overloads; the Kotlin function-type ones are hidden from it so
+ * that an implicitly typed lambda is never ambiguous.
+ */
+class AccessLogDecoder
+@JvmOverloads
+constructor(
+    val options: DecodeOptions = DecodeOptions(),
+    val prefix: String = "?",
+    val terminator: String = " ",
+    val regionBytes: Int = DEFAULT_REGION_BYTES,
+    private val executor: Executor? = null,
+) {
+    private val prefixBytes = prefix.toByteArray(options.charset)
+    private val terminatorBytes = terminator.toByteArray(options.charset)
+
+    init {
+        require(prefix.isNotEmpty()) { "Prefix must not be empty" }
+        require(terminator.isNotEmpty()) { "Terminator must not be empty" }
+        require(regionBytes > 0) { "Region size must be positive" }
+    }
+
+    /**
+     * Decode every query in [file] into a Map, exactly as `QS.decode` would.
+     *
+     * @param file [Path] the access log to read
+     * @param consumer receives the byte offset of the line and its decoded query
+     * @return [BatchDecodeStats] the number of queries decoded and the throughput
+     */
+    @JvmSynthetic
+    fun decode(
+        file: Path,
+        consumer: (offset: Long, result: Map<String, Any?>) -> Unit,
+    ): BatchDecodeStats {
+        val shared = sharedOptions()
+        val segmentCache = KeySegmentCache(shared)
+        return scan(file, shared) { offset, query ->
+            consumer(offset, BatchDecoder.decodeOne(query, shared, segmentCache))
+        }
+    }
+
+    /**
+     * Decode every query in [file] into a flat [PathTable] of path/value rows, without building
+     * nested Maps.
+     *
+     * @param file [Path] the access log to read
+     * @param consumer receives the byte offset of the line and its decoded rows
+     * @return [BatchDecodeStats] the number of queries decoded and the throughput
+     */
+    @JvmSynthetic
+    fun decodePathTables(
+        file: Path,
+        consumer: (offset: Long, table: PathTable) -> Unit,
+    ): BatchDecodeStats {
+        val shared = sharedOptions()
+        return scan(file, shared) { offset, query ->
+            consumer(
+                offset,
+                PathTable.fromFlat(Decoder.parseQueryStringValues(query, shared), shared),
+            )
+        }
+    }
+
+    /** Java-friendly [decode] accepting a {@link java.util.function.BiConsumer}. */
+    fun decode(file: Path, consumer: BiConsumer<Long, Map<String, Any?>>): BatchDecodeStats =
+        decode(file) { offset, result -> consumer.accept(offset, result) }
+
+    /** Java-friendly [decodePathTables] accepting a {@link java.util.function.BiConsumer}. */
+    fun decodePathTables(file: Path, consumer: BiConsumer<Long, PathTable>): BatchDecodeStats =
+        decodePathTables(file) { offset, table -> consumer.accept(offset, table) }
+
+    private fun sharedOptions(): DecodeOptions =
+        if (options.stringPool == null) options.copy(stringPool = StringPool()) else options
+
+    private fun scan(
+        file: Path,
+        options: DecodeOptions,
+        visit: (offset: Long, query: String) -> Unit,
+    ): BatchDecodeStats {
+        val start = System.nanoTime()
+        val count = AtomicLong()
+
+        FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+            val pool = executor ?: ForkJoinPool.commonPool()
+            val tasks =
+                regions(channel).map { (from, to) ->
+                    CompletableFuture.runAsync(
+                        { scanRegion(channel, from, to, options, count, visit) },
+                        pool,
+                    )
+                }
+
+            try {
+                CompletableFuture.allOf(*tasks.toTypedArray()).join()
+            } catch (e: CompletionException) {
+                tasks.forEach { it.cancel(false) }
+                throw e.cause ?: e
+            }
+        }
+
+        return BatchDecodeStats(count.get(), Duration.ofNanos(System.nanoTime() - start))
+    }
+
+    /** Split the file into `[from, to)` ranges that end just after a line feed (or at EOF). */
+    private fun regions(channel: FileChannel): List<Pair<Long, Long>> {
+        val size = channel.size()
+        val regions = ArrayList<Pair<Long, Long>>()
+        val probe = ByteBuffer.allocate(PROBE_BYTES)
+        var from = 0L
+
+        while (from < size) {
+            var to = minOf(from + regionBytes, size)
+            // Extend to the end of the current line.
+            while (to < size) {
+                probe.clear()
+                val read = channel.read(probe, to)
+                if (read <= 0) {
+                    to = size
+                    break
+                }
+                val newline = (0 until read).firstOrNull { probe.get(it) == LF }
+                if (newline != null) {
+                    to += newline + 1
+                    break
+                }
+                to += read
+            }
+            check(to - from <= Int.MAX_VALUE) { "A single line exceeds ${Int.MAX_VALUE} bytes" }
+
+            regions += from to to
+            from = to
+        }
+
+        return regions
+    }
+
+    private fun scanRegion(
+        channel: FileChannel,
+        from: Long,
+        to: Long,
+        options: DecodeOptions,
+        count: AtomicLong,
+        visit: (offset: Long, query: String) -> Unit,
+    ) {
+        val buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from)
+        buffer.order(ByteOrder.LITTLE_ENDIAN)
+        val limit = buffer.limit()
+        // Relative reads through a duplicate: the absolute bulk get needs Android API 35.
+        val reader = buffer.duplicate()
+        var scratch = ByteArray(SCRATCH_BYTES)
+        var lineStart = 0
+
+        while (lineStart < limit) {
+            val newline = ByteScanner.indexOf(buffer, LF, lineStart, limit)
+            var lineEnd = if (newline < 0) limit else newline
+            val next = lineEnd + 1
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == CR) lineEnd--
+
+            val prefixAt = ByteScanner.indexOf(buffer, prefixBytes, lineStart, lineEnd)
+            if (prefixAt >= 0) {
+                val queryStart = prefixAt + prefixBytes.size
+                val terminatorAt =
+                    ByteScanner.indexOf(buffer, terminatorBytes, queryStart, lineEnd)
+                val queryEnd = if (terminatorAt >= 0) terminatorAt else lineEnd
+                val length = queryEnd - queryStart
+
+                if (length > scratch.size) scratch = ByteArray(maxOf(length, scratch.size * 2))
+                reader.position(queryStart)
+                reader.get(scratch, 0, length)
+
+                // ASCII (the norm for percent-encoded queries) is copied as Latin-1, skipping the
+                // charset decoder; it maps to the same chars either way.
+                val ascii = ByteScanner.isAscii(buffer, queryStart, queryEnd)
+                val charset = if (ascii) StandardCharsets.ISO_8859_1 else options.charset
+                visit(from + lineStart, String(scratch, 0, length, charset))
+                count.incrementAndGet()
+            }
+
+            lineStart = next
+        }
+    }
+
+    companion object {
+        /** Default target size of one mapped region. */
+        const val DEFAULT_REGION_BYTES: Int = 64 * 1024 * 1024
+
+        private const val PROBE_BYTES = 8 * 1024
+        private const val SCRATCH_BYTES = 1024
+        private const val LF = '\n'.code.toByte()
+        private const val CR = '\r'.code.toByte()
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.techouse.qskotlin.models
+
+import java.time.Duration
+
+/**
+ * Summary of a `QS.decodeAll` run that streamed its results to a consumer.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val stats = QS.decodeAll(lines, options, executor) { _, query -> sink.write(query) }
+ * println("${stats.count} queries at ${stats.throughputPerSecond.toLong()}/s")
+ * ```
+ */
+data class BatchDecodeStats(
+    /** Number of inputs decoded. */
+    val count: Long,
+
+    /** Wall-clock time from the first submitted input to the last delivered result. */
+    val elapsed: Duration,
+) {
+    /** Inputs decoded per second, or `0.0` when nothing was decoded. */
+    val throughputPerSecond: Double
+        get() = if (count == 0L || elapsed.isZero) 0.0 else count * 1e9 / elapsed.toNanos()
+}
@@ -0,0 +1,38 @@
+package io.github.techouse.qskotlin.models
+
+/**
+ * Cooperative cancellation flag for a decode or encode in progress.
+ *
+ * Pass the token via [DecodeOptions.cancellationToken] or [EncodeOptions.cancellationToken] and
+ * call [cancel] from any thread; the running operation notices at its next periodic check and
+ * throws [java.util.concurrent.CancellationException]. A token stays cancelled once cancelled, so
+ * use a fresh one per request.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val token = CancellationToken()
+ * executor.schedule({ token.cancel() }, 50, TimeUnit.MILLISECONDS)
+ * QS.decode(query, DecodeOptions(cancellationToken = token))
+ * ```
+ *
+ * Java:
+ * ```java
+ * CancellationToken token = new CancellationToken();
+ * DecodeOptions options = DecodeOptions.builder().cancellationToken(token).build();
+ * ```
+ */
+class CancellationToken {
+    @Volatile private var cancelled = false
+
+    /** `true` once [cancel] has been called. */
+    val isCancelled: Boolean
+        get() = cancelled
+
+    /** Request cancellation of every operation observing this token. */
+    fun cancel() {
+        cancelled = true
+    }
+
+    override fun toString(): String = "CancellationToken(cancelled=$cancelled)"
+}
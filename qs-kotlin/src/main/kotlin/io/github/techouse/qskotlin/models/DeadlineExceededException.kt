@@ -0,0 +1,10 @@
+package io.github.techouse.qskotlin.models
+
+/**
+ * Thrown when a decode or encode runs past its [DecodeOptions.timeBudget] or
+ * [EncodeOptions.timeBudget].
+ *
+ * The check is cooperative, so the operation may overrun the budget by the time it takes to
+ * process a few hundred parameters or nodes.
+ */
+class DeadlineExceededException(message: String) : RuntimeException(message)
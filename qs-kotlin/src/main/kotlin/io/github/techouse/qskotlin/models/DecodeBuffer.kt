@@ -0,0 +1,329 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.decode as qsDecode
+import java.nio.charset.StandardCharsets
+
+/**
+ * Recyclable output container for `QS.decodeInto`.
+ *
+ * A buffer remembers the *shape* of the last query it decoded: the raw keys in order and which
+ * value landed in which Map entry or List slot. When the next query has the same shape, only the
+ * values are rewritten in place, and the same Maps and Lists are returned again. Plain values are
+ * resolved through a [StringPool], so a recurring fixed-shape query decodes without allocating.
+ * A query with a different shape is decoded normally and its shape replaces the remembered one.
+ *
+ * Ownership rules:
+ * - The returned Map, and everything inside it, belongs to the buffer. It is valid only until the
+ *   next `decodeInto` call with the same buffer; copy anything you need to keep.
+ * - Do not modify the returned Map or its children.
+ * - A buffer is not thread-safe; use one per thread (or per connection).
+ *
+ * Options that make the structure depend on value contents, or need per-call state (a custom
+ * decoder, a regex delimiter, `comma`, `strictMerge = false`, `charsetSentinel`, ISO-8859-1
+ * numeric entities, memory or time budgets) disable recycling: such queries are decoded normally
+ * on every call.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val buffer = DecodeBuffer(DecodeOptions(ignoreQueryPrefix = true))
+ * for (request in requests) {
+ *     val query = QS.decodeInto(request.rawQuery, buffer)
+ *     route(query["action"]) // do not keep `query` past this iteration
+ * }
+ * ```
+ *
+ * Java:
+ * ```java
+ * DecodeBuffer buffer = new DecodeBuffer(options);
+ * Map<String, Object> query = QS.decodeInto(rawQuery, buffer);
+ * ```
+ */
+class DecodeBuffer @JvmOverloads constructor(val options: DecodeOptions = DecodeOptions()) {
+    private val pool: StringPool = options.stringPool ?: StringPool()
+    private val recyclable: Boolean =
+        !options.hasCustomDecoder &&
+            options.delimiter is StringDelimiter &&
+            !options.comma &&
+            options.strictMerge &&
+            !options.charsetSentinel &&
+            !(options.interpretNumericEntities && options.charset == StandardCharsets.ISO_8859_1) &&
+            options.maxDecodedBytes == Long.MAX_VALUE &&
+            options.maxNodes == Int.MAX_VALUE &&
+            options.timeBudget == null &&
+            options.cancellationToken == null
+    private val delimiter: String = (options.delimiter as? StringDelimiter)?.value.orEmpty()
+
+    // Remembered shape: the raw keys of `shapeInput` (the query the shape was recorded from),
+    // their value state and value slot.
+    private var result: Map<String, Any?> = emptyMap()
+    private var shapeInput: String? = null
+    private var partCount = 0
+    private var keyStarts = IntArray(0)
+    private var keyEnds = IntArray(0)
+    private var valueStates = ByteArray(0)
+    private var slotContainers = arrayOfNulls<Any>(0)
+    private var slotKeys = arrayOfNulls<String>(0)
+    private var slotIndexes = IntArray(0)
+
+    private var parts = 0
+    private var partStarts = IntArray(16)
+    private var partKeyEnds = IntArray(16)
+    private var partEnds = IntArray(16)
+
+    /** Number of calls answered by rewriting the remembered result in place. */
+    var recycledCount: Long = 0
+        private set
+
+    /** Number of calls that had to decode from scratch. */
+    var rebuildCount: Long = 0
+        private set
+
+    /** Forget the remembered shape and result. */
+    fun clear() {
+        result = emptyMap()
+        shapeInput = null
+        partCount = 0
+    }
+
+    internal fun decode(input: String?): Map<String, Any?> {
+        if (input.isNullOrEmpty()) {
+            clear()
+            return result
+        }
+        if (!recyclable || !split(input)) {
+            clear()
+            rebuildCount++
+            return qsDecode(input, options)
+        }
+
+        if (parts == partCount && sameShape(input)) {
+            for (i in 0 until parts) {
+                val slot = slotIndexes[i]
+                if (slot >= 0) write(i, slotValue(input, partKeyEnds[i] + 1, partEnds[i]))
+            }
+            recycledCount++
+            return result
+        }
+
+        rebuildCount++
+        return rebuild(input)
+    }
+
+    /**
+     * Split [input] into non-empty parts and locate each key end with the decoder's `]=` rule.
+     * Returns `false` when the input is outside what a shape can describe.
+     */
+    private fun split(input: String): Boolean {
+        var start = if (options.ignoreQueryPrefix && input.startsWith('?')) 1 else 0
+        parts = 0
+
+        while (start <= input.length) {
+            val next = input.indexOf(delimiter, start)
+            val end = if (next == -1) input.length else next
+
+            if (end > start) {
+                if (parts == options.parameterLimit) return false
+                if (!addPart(input, start, end)) return false
+            }
+
+            if (next == -1) break
+            start = next + delimiter.length
+        }
+
+        return true
+    }
+
+    private fun addPart(input: String, start: Int, end: Int): Boolean {
+        var equals = -1
+        var bracketEquals = -1
+        for (i in start until end) {
+            when (input[i]) {
+                '=' -> if (equals < 0) equals = i
+                ']' ->
+                    if (bracketEquals < 0 && i + 1 < end && input[i + 1] == '=') {
+                        bracketEquals = i
+                    }
+                // Percent-encoded brackets are rewritten before splitting; leave them to decode.
+                '%' ->
+                    if (
+                        i + 2 < end &&
+                            input[i + 1] == '5' &&
+                            input[i + 2].let { it == 'B' || it == 'b' || it == 'D' || it == 'd' }
+                    ) {
+                        return false
+                    }
+            }
+        }
+
+        if (parts == partStarts.size) {
+            partStarts = partStarts.copyOf(parts * 2)
+            partKeyEnds = partKeyEnds.copyOf(parts * 2)
+            partEnds = partEnds.copyOf(parts * 2)
+        }
+        partStarts[parts] = start
+        partKeyEnds[parts] =
+            when {
+                bracketEquals >= 0 -> bracketEquals + 1
+                equals >= 0 -> equals
+                else -> end
+            }
+        partEnds[parts] = end
+        parts++
+        return true
+    }
+
+    private fun valueState(i: Int): Byte =
+        when {
+            partKeyEnds[i] == partEnds[i] -> NO_VALUE
+            partKeyEnds[i] + 1 == partEnds[i] -> EMPTY_VALUE
+            else -> HAS_VALUE
+        }
+
+    private fun sameShape(input: String): Boolean {
+        val previous = shapeInput ?: return false
+        for (i in 0 until parts) {
+            val length = partKeyEnds[i] - partStarts[i]
+            if (
+                length != keyEnds[i] - keyStarts[i] ||
+                    valueStates[i] != valueState(i) ||
+                    !input.regionMatches(partStarts[i], previous, keyStarts[i], length)
+            ) {
+                return false
+            }
+        }
+        return true
+    }
+
+    /** Decode the value slice exactly as the decoder would, interning plain tokens. */
+    private fun slotValue(input: String, start: Int, end: Int): Any? {
+        var plain = true
+        for (i in start until end) {
+            val c = input[i]
+            if (c == '%' || c == '+') {
+                plain = false
+                break
+            }
+        }
+        if (plain) return pool.intern(input, start, end)
+
+        val decoded = options.decodeValue(input.substring(start, end), options.charset)
+        return if (decoded is String) pool.intern(decoded) else decoded
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun write(part: Int, value: Any?) {
+        val slot = slotIndexes[part]
+        when (val container = slotContainers[part]) {
+            is MutableMap<*, *> -> (container as MutableMap<String, Any?>)[slotKeys[part]!!] = value
+            is MutableList<*> -> (container as MutableList<Any?>)[slot] = value
+        }
+    }
+
+    /**
+     * Decode a copy of [input] whose values are replaced by unique markers, find where each marker
+     * landed, then write the real values into those slots. Because none of the enabled options
+     * look at value contents (only at whether a value is present or empty), the structure is the
+     * one `QS.decode(input)` would build.
+     */
+    private fun rebuild(input: String): Map<String, Any?> {
+        clear()
+
+        val markers = HashMap<String, Int>()
+        val template = StringBuilder(input.length)
+        if (options.ignoreQueryPrefix && input.startsWith('?')) template.append('?')
+        for (i in 0 until parts) {
+            if (i > 0) template.append(delimiter)
+            template.append(input, partStarts[i], partKeyEnds[i])
+            when (valueState(i)) {
+                EMPTY_VALUE -> template.append('=')
+                HAS_VALUE -> {
+                    val marker = "$MARKER$i"
+                    if (marker.contains(delimiter)) return qsDecode(input, options)
+                    markers[marker] = i
+                    template.append('=').append(marker)
+                }
+            }
+        }
+
+        val shaped = qsDecode(template.toString(), options)
+
+        val containers = arrayOfNulls<Any>(parts)
+        val keys = arrayOfNulls<String>(parts)
+        val indexes = IntArray(parts) { -1 }
+        if (!locate(shaped, markers, containers, keys, indexes)) return qsDecode(input, options)
+        // A value that did not land in a slot of its own (e.g. merged into a key) has no shape.
+        for (i in 0 until parts) {
+            if (valueState(i) == HAS_VALUE && indexes[i] < 0) return qsDecode(input, options)
+        }
+
+        keyStarts = partStarts.copyOf(parts)
+        keyEnds = partKeyEnds.copyOf(parts)
+        valueStates = ByteArray(parts) { valueState(it) }
+        slotContainers = containers
+        slotKeys = keys
+        slotIndexes = indexes
+        partCount = parts
+        shapeInput = input
+        result = shaped
+
+        for (i in 0 until parts) {
+            if (indexes[i] >= 0) write(i, slotValue(input, partKeyEnds[i] + 1, partEnds[i]))
+        }
+        return result
+    }
+
+    /**
+     * Walk [root] and record the container and key or index of every marker. Fails when a marker
+     * occurs twice, shows up as a Map key, or sits in a container that cannot be written in place.
+     */
+    private fun locate(
+        root: Any?,
+        markers: Map<String, Int>,
+        containers: Array<Any?>,
+        keys: Array<String?>,
+        indexes: IntArray,
+    ): Boolean {
+        val stack = ArrayDeque<Any?>()
+        stack.add(root)
+        while (stack.isNotEmpty()) {
+            when (val node = stack.removeLast()) {
+                is Map<*, *> ->
+                    for ((key, value) in node) {
+                        if (key is String && markers.containsKey(key)) return false
+                        val part = (value as? String)?.let { markers[it] }
+                        if (part == null) {
+                            stack.add(value)
+                            continue
+                        }
+                        if (node !is HashMap<*, *> || key !is String || indexes[part] >= 0) {
+                            return false
+                        }
+                        containers[part] = node
+                        keys[part] = key
+                        indexes[part] = 0
+                    }
+
+                is List<*> ->
+                    for ((index, value) in node.withIndex()) {
+                        val part = (value as? String)?.let { markers[it] }
+                        if (part == null) {
+                            stack.add(value)
+                            continue
+                        }
+                        if (node !is ArrayList<*> || indexes[part] >= 0) return false
+                        containers[part] = node
+                        indexes[part] = index
+                    }
+            }
+        }
+        return true
+    }
+
+    private companion object {
+        const val NO_VALUE: Byte = 0
+        const val EMPTY_VALUE: Byte = 1
+        const val HAS_VALUE: Byte = 2
+        const val MARKER = "~qs~"
+    }
+}
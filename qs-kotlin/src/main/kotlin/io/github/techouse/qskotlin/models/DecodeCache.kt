@@ -0,0 +1,211 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.decode as qsDecode
+import java.util.Collections
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Bounded, thread-safe cache of decoded query strings.
+ *
+ * Wrap `QS.decode` with a shared instance when a small set of query strings dominates traffic: a
+ * repeated `(query, options)` pair then costs one hash lookup instead of a full decode.
+ *
+ * Entries are keyed by the query string and the *identity* of the [DecodeOptions] instance, so
+ * build the options once and reuse them. The cache is split into [stripes] independently locked
+ * LRU segments that share the [maxBytes] budget evenly; each entry is weighed by an estimate of the
+ * memory held by its query and decoded tree. Results larger than a single segment's budget are
+ * returned but not cached.
+ *
+ * Every returned Map (cached or not) is deeply immutable, so it can be shared safely across
+ * threads. Callers that need to mutate the result must copy it first.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val cache = DecodeCache(maxBytes = 16L * 1024 * 1024)
+ * val options = DecodeOptions(allowDots = true)
+ * cache.decode("a.b=c", options) // decoded and cached
+ * cache.decode("a.b=c", options) // served from the cache
+ * ```
+ *
+ * Java:
+ * ```java
+ * DecodeCache cache = new DecodeCache(16L * 1024 * 1024);
+ * Map<String, Object> params = cache.decode(request.getQueryString(), options);
+ * ```
+ */
+class DecodeCache
+@JvmOverloads
+constructor(val maxBytes: Long = DEFAULT_MAX_BYTES, stripes: Int = DEFAULT_STRIPES) {
+    /** Number of independently locked segments (a power of two). */
+    val stripes: Int
+
+    private val mask: Int
+    private val segmentBudget: Long
+    private val segments: Array<Segment>
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+    private val evictions = LongAdder()
+
+    init {
+        require(maxBytes > 0) { "Max bytes must be positive" }
+        require(stripes in 1..MAX_STRIPES) { "Stripes must be between 1 and $MAX_STRIPES" }
+
+        this.stripes = if (stripes == 1) 1 else Integer.highestOneBit(stripes - 1) shl 1
+        mask = this.stripes - 1
+        segmentBudget = maxBytes / this.stripes
+        segments = Array(this.stripes) { Segment() }
+    }
+
+    /**
+     * Decode [query] with [options], answering from the cache when the same query was decoded
+     * with the same options instance before.
+     *
+     * @param query [String] the query string to decode
+     * @param options [DecodeOptions] optional decoder settings; compared by identity
+     * @return [Map<String, Any?>] the decoded, deeply immutable Map
+     */
+    @Throws(IllegalArgumentException::class, IndexOutOfBoundsException::class)
+    @JvmOverloads
+    fun decode(query: String?, options: DecodeOptions? = null): Map<String, Any?> {
+        if (query.isNullOrEmpty()) return emptyMap()
+
+        val key = Key(query, options)
+        val segment = segments[spread(key.hashCode()) and mask]
+
+        synchronized(segment) { segment.entries[key] }
+            ?.let {
+                hits.increment()
+                return it.value
+            }
+
+        misses.increment()
+
+        @Suppress("UNCHECKED_CAST")
+        val value = freeze(qsDecode(query, options)) as Map<String, Any?>
+        val weight = QUERY_OVERHEAD + query.length * 2L + weigh(value)
+        if (weight > segmentBudget) return value
+
+        synchronized(segment) {
+            segment.entries.put(key, Entry(value, weight))?.let { segment.weight -= it.weight }
+            segment.weight += weight
+
+            val iterator = segment.entries.values.iterator()
+            while (segment.weight > segmentBudget && iterator.hasNext()) {
+                segment.weight -= iterator.next().weight
+                iterator.remove()
+                evictions.increment()
+            }
+        }
+
+        return value
+    }
+
+    /** Number of lookups answered from the cache. */
+    val hitCount: Long
+        get() = hits.sum()
+
+    /** Number of lookups that required a full decode. */
+    val missCount: Long
+        get() = misses.sum()
+
+    /** Number of entries dropped to stay within [maxBytes]. */
+    val evictionCount: Long
+        get() = evictions.sum()
+
+    /** Fraction of lookups answered from the cache, or `0.0` before the first lookup. */
+    val hitRate: Double
+        get() {
+            val h = hits.sum()
+            val total = h + misses.sum()
+            return if (total == 0L) 0.0 else h.toDouble() / total
+        }
+
+    /** Number of cached entries. This is a snapshot and may race with concurrent lookups. */
+    val size: Int
+        get() = segments.sumOf { synchronized(it) { it.entries.size } }
+
+    /** Estimated bytes held by the cached entries. */
+    val weightedSize: Long
+        get() = segments.sumOf { synchronized(it) { it.weight } }
+
+    /** Drop all entries and reset the statistics. */
+    fun clear() {
+        for (segment in segments) {
+            synchronized(segment) {
+                segment.entries.clear()
+                segment.weight = 0
+            }
+        }
+        hits.reset()
+        misses.reset()
+        evictions.reset()
+    }
+
+    override fun toString(): String =
+        "DecodeCache(maxBytes=$maxBytes, stripes=$stripes, size=$size, hits=$hitCount, " +
+            "misses=$missCount, evictions=$evictionCount)"
+
+    /** Cache key: query by value, options by identity. */
+    private class Key(val query: String, val options: DecodeOptions?) {
+        private val hash = query.hashCode() * 31 + System.identityHashCode(options)
+
+        override fun equals(other: Any?): Boolean =
+            other is Key && other.options === options && other.query == query
+
+        override fun hashCode(): Int = hash
+    }
+
+    private class Entry(val value: Map<String, Any?>, val weight: Long)
+
+    /** An access-ordered LRU segment; guarded by its own monitor. */
+    private class Segment {
+        val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        var weight = 0L
+    }
+
+    companion object {
+        /** Default memory budget: 64 MiB. */
+        const val DEFAULT_MAX_BYTES: Long = 64L * 1024 * 1024
+
+        /** Default number of segments. */
+        const val DEFAULT_STRIPES: Int = 16
+
+        private const val MAX_STRIPES: Int = 1 shl 16
+
+        /** Rough per-object header/reference overheads used by [weigh]. */
+        private const val QUERY_OVERHEAD: Long = 64
+        private const val STRING_OVERHEAD: Long = 40
+        private const val CONTAINER_OVERHEAD: Long = 48
+        private const val SLOT_OVERHEAD: Long = 32
+
+        private fun spread(hash: Int): Int = hash xor (hash ushr 16)
+
+        /** Recursively copy Maps and Lists into unmodifiable containers. */
+        private fun freeze(value: Any?): Any? =
+            when (value) {
+                is Map<*, *> -> {
+                    val copy = LinkedHashMap<Any?, Any?>(maxOf(16, value.size * 2))
+                    for ((k, v) in value) copy[k] = freeze(v)
+                    Collections.unmodifiableMap(copy)
+                }
+
+                is List<*> ->
+                    Collections.unmodifiableList(value.mapTo(ArrayList(value.size)) { freeze(it) })
+                else -> value
+            }
+
+        /** Estimate the bytes retained by a frozen tree. */
+        private fun weigh(value: Any?): Long =
+            when (value) {
+                is String -> STRING_OVERHEAD + value.length * 2L
+                is Map<*, *> ->
+                    value.entries.fold(CONTAINER_OVERHEAD) { acc, (k, v) ->
+                        acc + SLOT_OVERHEAD + weigh(k) + weigh(v)
+                    }
+
+                is List<*> -> value.fold(CONTAINER_OVERHEAD) { acc, v -> acc + 8 + weigh(v) }
+                else -> 16
+            }
+    }
+}
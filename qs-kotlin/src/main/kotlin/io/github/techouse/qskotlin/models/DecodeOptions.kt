@@ -5,6 +5,7 @@ import io.github.techouse.qskotlin.enums.Duplicates
 import io.github.techouse.qskotlin.internal.Utils
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.time.Duration
 import java.util.regex.Pattern
 
 /** Unified scalar decoder. Implementations may ignore `charset` and/or `kind`. */
@@ -155,6 +156,65 @@ data class DecodeOptions(
      * `true`.
      */
     val strictMerge: Boolean = true,
+
+    /**
+     * Optional [StringPool] used to deduplicate decoded keys, key segments and short values.
+     *
+     * Share one pool across requests so that recurring keys and enumerated values resolve to a
+     * single canonical String instance. Plain tokens (no `%` or `+`) are looked up by their raw
+     * slice without first building a String.
+     */
+    val stringPool: StringPool? = null,
+
+    /**
+     * Upper bound on the decoded key and value characters (counted as 2 bytes each) kept by a
+     * single decode. Unlimited by default.
+     *
+     * When exceeded, decoding throws an `IndexOutOfBoundsException` if [throwOnLimitExceeded] is
+     * `true`; otherwise the offending parameter and all following ones are dropped.
+     */
+    val maxDecodedBytes: Long = Long.MAX_VALUE,
+
+    /**
+     * Upper bound on the number of nodes (Maps, Lists, list slots and leaf values) built by a
+     * single decode. Unlimited by default.
+     *
+     * Unlike [listLimit], this also accounts for the padding a sparse index such as `a[10000]`
+     * would allocate. Exceeding it behaves like [maxDecodedBytes].
+     */
+    val maxNodes: Int = Int.MAX_VALUE,
+
+    /**
+     * Optional wall-clock budget for a single decode. When it elapses, decoding throws
+     * [DeadlineExceededException]. The check is cooperative and runs every few hundred
+     * parameters or merge steps.
+     */
+    val timeBudget: Duration? = null,
+
+    /**
+     * Optional [CancellationToken]; once cancelled, a running decode throws
+     * `java.util.concurrent.CancellationException` at its next periodic check.
+     */
+    val cancellationToken: CancellationToken? = null,
+
+    /**
+     * Decode large inputs on the common `ForkJoinPool`.
+     *
+     * When `true` and the input has at least [parallelThreshold] parameters, keys and values are
+     * decoded, and nested keys are expanded, in parallel. Duplicate handling, list limits and
+     * merging still run in input order, so the result is identical to a sequential decode. A
+     * custom [decoder] must be thread-safe when this is enabled.
+     */
+    val parallel: Boolean = false,
+
+    /**
+     * Minimum number of parameters before [parallel] decoding is used.
+     *
+     * At the default, [DEFAULT_PARALLEL_THRESHOLD], the parallel stages are no slower than the
+     * sequential ones even without a spare core. Hosts with several cores may profit from a lower
+     * value.
+     */
+    val parallelThreshold: Int = DEFAULT_PARALLEL_THRESHOLD,
 ) {
     /**
      * Builder for [DecodeOptions]. Prefer this from Java to avoid long, ambiguous constructors.
@@ -193,6 +253,13 @@ data class DecodeOptions(
         private var strictMerge: Boolean = true
         private var strictNullHandling: Boolean = false
         private var throwOnLimitExceeded: Boolean = false
+        private var stringPool: StringPool? = null
+        private var maxDecodedBytes: Long = Long.MAX_VALUE
+        private var maxNodes: Int = Int.MAX_VALUE
+        private var timeBudget: Duration? = null
+        private var cancellationToken: CancellationToken? = null
+        private var parallel: Boolean = false
+        private var parallelThreshold: Int = DEFAULT_PARALLEL_THRESHOLD
 
         /**
          * Provide a unified Kotlin decoder. If set, this takes precedence over [legacyDecoder]. The
@@ -311,6 +378,27 @@ data class DecodeOptions(
         /** Throw when any parsing limit is exceeded (e.g., [parameterLimit]). */
         fun throwOnLimitExceeded(value: Boolean) = apply { this.throwOnLimitExceeded = value }
 
+        /** Share a [StringPool] to deduplicate decoded keys and short values across calls. */
+        fun stringPool(value: StringPool?) = apply { this.stringPool = value }
+
+        /** Bound the decoded key and value size of a single decode, in bytes. */
+        fun maxDecodedBytes(value: Long) = apply { this.maxDecodedBytes = value }
+
+        /** Bound the number of Maps, Lists, list slots and leaves built by a single decode. */
+        fun maxNodes(value: Int) = apply { this.maxNodes = value }
+
+        /** Abort with [DeadlineExceededException] when a single decode runs longer than this. */
+        fun timeBudget(value: Duration?) = apply { this.timeBudget = value }
+
+        /** Observe a [CancellationToken] to abort a running decode from another thread. */
+        fun cancellationToken(value: CancellationToken?) = apply { this.cancellationToken = value }
+
+        /** Decode inputs with at least [parallelThreshold] parameters on the common pool. */
+        fun parallel(value: Boolean) = apply { this.parallel = value }
+
+        /** Minimum number of parameters before [parallel] decoding is used. */
+        fun parallelThreshold(value: Int) = apply { this.parallelThreshold = value }
+
         /** Build an immutable [DecodeOptions] with the configured values. */
         fun build(): DecodeOptions =
             DecodeOptions(
@@ -335,6 +423,13 @@ data class DecodeOptions(
                 strictMerge = strictMerge,
                 strictNullHandling = strictNullHandling,
                 throwOnLimitExceeded = throwOnLimitExceeded,
+                stringPool = stringPool,
+                maxDecodedBytes = maxDecodedBytes,
+                maxNodes = maxNodes,
+                timeBudget = timeBudget,
+                cancellationToken = cancellationToken,
+                parallel = parallel,
+                parallelThreshold = parallelThreshold,
             )
     }
 
@@ -358,6 +453,11 @@ data class DecodeOptions(
     val getDecodeDotInKeys: Boolean
         get() = decodeDotInKeys ?: false
 
+    /** `true` when a custom [decoder] or [legacyDecoder] replaces the library default. */
+    @Suppress("DEPRECATION")
+    internal val hasCustomDecoder: Boolean
+        get() = decoder != null || legacyDecoder != null
+
     // Java-friendly aliases (non-breaking):
     @JvmName("isAllowDotsEffective") fun isAllowDotsEffective(): Boolean = getAllowDots
 
@@ -370,6 +470,12 @@ data class DecodeOptions(
         }
         require(parameterLimit > 0) { "Parameter limit must be positive" }
         require(depth >= 0) { "Depth must be non-negative" }
+        require(maxDecodedBytes > 0) { "Max decoded bytes must be positive" }
+        require(maxNodes > 0) { "Max nodes must be positive" }
+        require(timeBudget == null || !timeBudget.isNegative) {
+            "Time budget must be non-negative"
+        }
+        require(parallelThreshold > 0) { "Parallel threshold must be positive" }
         // If decodeDotInKeys is enabled, allowDots must not be explicitly false.
         require(!getDecodeDotInKeys || allowDots != false) {
             "decodeDotInKeys requires allowDots to be true"
@@ -426,5 +532,8 @@ data class DecodeOptions(
 
         /** A handy defaults instance for Java call sites. */
         @JvmStatic fun defaults(): DecodeOptions = DecodeOptions()
+
+        /** Default [parallelThreshold]. */
+        const val DEFAULT_PARALLEL_THRESHOLD: Int = 16_384
     }
 }
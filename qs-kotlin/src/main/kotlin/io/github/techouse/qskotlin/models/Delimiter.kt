@@ -1,5 +1,6 @@
 package io.github.techouse.qskotlin.models
 
+import java.util.regex.Matcher
 import java.util.regex.Pattern
 
 /**
@@ -107,6 +108,9 @@ class RegexDelimiter(private val jPattern: Pattern) : Delimiter() {
 
     override fun split(input: String): List<String> = jPattern.split(input).toList()
 
+    /** A [Matcher] over [input] for callers that scan delimiters without splitting. */
+    internal fun matcher(input: CharSequence): Matcher = jPattern.matcher(input)
+
     /** Two [RegexDelimiter]s are equal when both pattern text and flags are equal. */
     override fun equals(other: Any?): Boolean =
         when {
@@ -0,0 +1,161 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.encode as qsEncode
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Identity-keyed memoization of `QS.encode` for long-lived, immutable inputs.
+ *
+ * Register each immutable root (tenant defaults, feature-flag bundles, …) once with
+ * [markImmutable], then route encode calls through [encode]. A marked root encoded again with the
+ * same [EncodeOptions] instance returns the cached String without traversing the input. Inputs
+ * that were never marked are encoded as usual and never cached.
+ *
+ * Entries hold their root weakly (via [WeakWrapper]), so they disappear once the input is
+ * garbage-collected; collected entries are purged as new ones are added. At most [maxEntries]
+ * results are kept, evicting the least recently used.
+ *
+ * Marking is a promise: the cache cannot see later mutations, so a marked root (and everything it
+ * references) must not change afterward.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val cache = EncodeCache(maxEntries = 256)
+ * val defaults = cache.markImmutable(mapOf("tenant" to "acme", "flags" to listOf("a", "b")))
+ * val options = EncodeOptions(encode = false)
+ * cache.encode(defaults, options) // encoded and cached
+ * cache.encode(defaults, options) // served from the cache
+ * ```
+ *
+ * Java:
+ * ```java
+ * EncodeCache cache = new EncodeCache(256);
+ * Map<String, Object> defaults = cache.markImmutable(Map.of("tenant", "acme"));
+ * String query = cache.encode(defaults, options);
+ * ```
+ */
+class EncodeCache @JvmOverloads constructor(val maxEntries: Int = DEFAULT_MAX_ENTRIES) {
+    private val lock = Any()
+    private val marked = HashMap<WeakWrapper<Any>, Unit>()
+    private val entries = LinkedHashMap<Key, String>(16, 0.75f, true)
+    private var insertsSincePurge = 0
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+    private val evictions = LongAdder()
+
+    init {
+        require(maxEntries > 0) { "Max entries must be positive" }
+    }
+
+    /**
+     * Declare [data] immutable so that [encode] may cache its result.
+     *
+     * @return [data], for chaining
+     */
+    fun <T : Any> markImmutable(data: T): T {
+        synchronized(lock) {
+            marked[WeakWrapper(data)] = Unit
+            purgeIfDue()
+        }
+        return data
+    }
+
+    /** Returns `true` when [data] has been passed to [markImmutable]. */
+    fun isMarkedImmutable(data: Any?): Boolean =
+        data != null && synchronized(lock) { marked.containsKey(WeakWrapper(data)) }
+
+    /**
+     * Encode [data] with [options], answering from the cache when [data] was marked immutable and
+     * already encoded with the same options instance.
+     *
+     * @param data [Any?] the data to encode
+     * @param options [EncodeOptions] optional encoder settings; compared by identity
+     * @return [String] the encoded query string
+     */
+    @Throws(IndexOutOfBoundsException::class)
+    @JvmOverloads
+    fun encode(data: Any?, options: EncodeOptions? = null): String {
+        if (data == null || !isMarkedImmutable(data)) return qsEncode(data, options)
+
+        val key = Key(WeakWrapper(data), options)
+        synchronized(lock) { entries[key] }
+            ?.let {
+                hits.increment()
+                return it
+            }
+
+        misses.increment()
+        val encoded = qsEncode(data, options)
+
+        synchronized(lock) {
+            entries[key] = encoded
+            purgeIfDue()
+            val iterator = entries.keys.iterator()
+            while (entries.size > maxEntries && iterator.hasNext()) {
+                iterator.next()
+                iterator.remove()
+                evictions.increment()
+            }
+        }
+
+        return encoded
+    }
+
+    /** Number of encode calls answered from the cache. */
+    val hitCount: Long
+        get() = hits.sum()
+
+    /** Number of encode calls on marked inputs that required a full encode. */
+    val missCount: Long
+        get() = misses.sum()
+
+    /** Number of entries dropped to stay within [maxEntries]. */
+    val evictionCount: Long
+        get() = evictions.sum()
+
+    /** Number of cached results, including any whose input was collected but not yet purged. */
+    val size: Int
+        get() = synchronized(lock) { entries.size }
+
+    /** Drop all cached results and marks, and reset the statistics. */
+    fun clear() {
+        synchronized(lock) {
+            entries.clear()
+            marked.clear()
+            insertsSincePurge = 0
+        }
+        hits.reset()
+        misses.reset()
+        evictions.reset()
+    }
+
+    override fun toString(): String =
+        "EncodeCache(maxEntries=$maxEntries, size=$size, hits=$hitCount, misses=$missCount, " +
+            "evictions=$evictionCount)"
+
+    /** Drop entries and marks whose input has been collected. Must hold [lock]. */
+    private fun purgeIfDue() {
+        if (++insertsSincePurge < PURGE_INTERVAL) return
+        insertsSincePurge = 0
+        entries.keys.removeIf { it.data.get() == null }
+        marked.keys.removeIf { it.get() == null }
+    }
+
+    /** Cache key: input and options both by identity. */
+    private class Key(val data: WeakWrapper<Any>, val options: EncodeOptions?) {
+        private val hash = data.hashCode() * 31 + System.identityHashCode(options)
+
+        override fun equals(other: Any?): Boolean =
+            other is Key && other.options === options && other.data == data
+
+        override fun hashCode(): Int = hash
+    }
+
+    companion object {
+        /** Default maximum number of cached results. */
+        const val DEFAULT_MAX_ENTRIES: Int = 1_024
+
+        private const val PURGE_INTERVAL = 64
+    }
+}
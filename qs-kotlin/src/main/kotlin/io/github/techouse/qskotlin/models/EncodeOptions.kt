@@ -6,6 +6,7 @@ import io.github.techouse.qskotlin.enums.ListFormat
 import io.github.techouse.qskotlin.internal.Utils
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.time.Duration
 import java.time.LocalDateTime
 
 /**
@@ -140,6 +141,51 @@ data class EncodeOptions(
 
     /** Set a Sorter to affect the order of parameter keys. */
     val sort: Sorter? = null,
+
+    /**
+     * Optional wall-clock budget for a single encode. When it elapses, encoding throws
+     * [DeadlineExceededException]. The check is cooperative and runs every few hundred nodes.
+     */
+    val timeBudget: Duration? = null,
+
+    /**
+     * Optional [CancellationToken]; once cancelled, a running encode throws
+     * `java.util.concurrent.CancellationException` at its next periodic check.
+     */
+    val cancellationToken: CancellationToken? = null,
+
+    /**
+     * Encode large root containers on the common `ForkJoinPool`.
+     *
+     * When `true` and the root has at least [parallelThreshold] keys (or list elements), each
+     * root entry is encoded independently and the parts are joined in the original key order, so
+     * the output is identical to a sequential encode, [sort] and [filter] included. A custom
+     * [encoder], [dateSerializer], [filter] or [sort] must be thread-safe when this is enabled.
+     */
+    val parallel: Boolean = false,
+
+    /** Minimum number of root entries before [parallel] encoding is used. */
+    val parallelThreshold: Int = DEFAULT_PARALLEL_THRESHOLD,
+
+    /**
+     * Trust that the input contains no cycles and skip per-container identity tracking.
+     *
+     * By default every Map, Iterable and Array is recorded in an identity set while it is being
+     * encoded, so a cycle fails with "Cyclic object value". That bookkeeping dominates encoding of
+     * wide, shallow data. Inputs that cannot be cyclic (e.g. freshly deserialized JSON) can opt
+     * out; the encoder then only counts nesting depth and throws [IndexOutOfBoundsException] once
+     * it exceeds [maxDepth], which is also how a cycle surfaces in this mode.
+     */
+    val assumeAcyclic: Boolean = false,
+
+    /** Maximum container nesting below each root key when [assumeAcyclic] is `true`. */
+    val maxDepth: Int = DEFAULT_MAX_DEPTH,
+
+    /**
+     * Optional per-type writers for leaf values such as `UUID` or `BigDecimal`, applied before
+     * [dateSerializer] and [encoder]; see [TypeWriters].
+     */
+    val typeWriters: TypeWriters? = null,
 ) {
     /** Convenience getter: effective allowDots (fallbacks to encodeDotInKeys when null). */
     val getAllowDots: Boolean
@@ -162,11 +208,20 @@ data class EncodeOptions(
     val formatter: Formatter
         get() = format.formatter
 
+    /** `true` when a custom [encoder] replaces the library default. */
+    internal val hasCustomEncoder: Boolean
+        get() = encoder != null
+
     init {
         // Validate charset
         require(charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1) {
             "Invalid charset"
         }
+        require(timeBudget == null || !timeBudget.isNegative) {
+            "Time budget must be non-negative"
+        }
+        require(parallelThreshold > 0) { "Parallel threshold must be positive" }
+        require(maxDepth > 0) { "Max depth must be positive" }
     }
 
     /**
@@ -228,6 +283,13 @@ data class EncodeOptions(
         private var commaRoundTrip: Boolean? = null
         private var commaCompactNulls: Boolean = false
         private var sort: Sorter? = null
+        private var timeBudget: Duration? = null
+        private var cancellationToken: CancellationToken? = null
+        private var parallel: Boolean = false
+        private var parallelThreshold: Int = DEFAULT_PARALLEL_THRESHOLD
+        private var assumeAcyclic: Boolean = false
+        private var maxDepth: Int = DEFAULT_MAX_DEPTH
+        private var typeWriters: TypeWriters? = null
 
         /** Provide a Kotlin [ValueEncoder]. Ignored when [encode] is `false`. */
         fun encoder(encoder: ValueEncoder) = apply { this.encoder = encoder }
@@ -315,6 +377,27 @@ data class EncodeOptions(
             this.sort = { a, b -> comparator.compare(a, b) }
         }
 
+        /** Abort with [DeadlineExceededException] when a single encode runs longer than this. */
+        fun timeBudget(value: Duration?) = apply { this.timeBudget = value }
+
+        /** Observe a [CancellationToken] to abort a running encode from another thread. */
+        fun cancellationToken(value: CancellationToken?) = apply { this.cancellationToken = value }
+
+        /** Encode roots with at least [parallelThreshold] entries on the common pool. */
+        fun parallel(value: Boolean) = apply { this.parallel = value }
+
+        /** Minimum number of root entries before [parallel] encoding is used. */
+        fun parallelThreshold(value: Int) = apply { this.parallelThreshold = value }
+
+        /** Skip cycle detection for inputs that cannot be cyclic; only depth is checked. */
+        fun assumeAcyclic(value: Boolean) = apply { this.assumeAcyclic = value }
+
+        /** Maximum container nesting enforced when [assumeAcyclic] is enabled. */
+        fun maxDepth(value: Int) = apply { this.maxDepth = value }
+
+        /** Write registered value types with their [TypeWriters] entry. */
+        fun typeWriters(value: TypeWriters?) = apply { this.typeWriters = value }
+
         /** Build an immutable [EncodeOptions] with the configured values. */
         @Suppress("DEPRECATION")
         fun build(): EncodeOptions =
@@ -339,6 +422,13 @@ data class EncodeOptions(
                 commaRoundTrip = commaRoundTrip,
                 commaCompactNulls = commaCompactNulls,
                 sort = sort,
+                timeBudget = timeBudget,
+                cancellationToken = cancellationToken,
+                parallel = parallel,
+                parallelThreshold = parallelThreshold,
+                assumeAcyclic = assumeAcyclic,
+                maxDepth = maxDepth,
+                typeWriters = typeWriters,
             )
     }
 
@@ -348,5 +438,11 @@ data class EncodeOptions(
 
         /** A handy defaults instance for Java call sites. */
         @JvmStatic fun defaults(): EncodeOptions = EncodeOptions()
+
+        /** Default [parallelThreshold]. */
+        const val DEFAULT_PARALLEL_THRESHOLD: Int = 1_024
+
+        /** Default [maxDepth]. */
+        const val DEFAULT_MAX_DEPTH: Int = 10_000
     }
 }
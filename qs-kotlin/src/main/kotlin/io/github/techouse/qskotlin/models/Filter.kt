@@ -1,13 +1,16 @@
 package io.github.techouse.qskotlin.models
 
+import io.github.techouse.qskotlin.internal.PathTrie
 import java.util.function.BiFunction
 
 /**
  * Marker interface for filters used by encoding.
  *
  * A filter can either:
- * - **Transform** values on a per key/value basis ([FunctionFilter]).
- * - **Select** a subset of keys/indices to include ([IterableFilter]).
+ * - **Transform** values on a per key/value basis ([FunctionFilter], or [PathFilter] to inspect the
+ *   key path without building it).
+ * - **Select** a subset of keys/indices to include ([IterableFilter]), or of whole key paths
+ *   ([AllowlistFilter]).
  *
  * See: `EncodeOptions.Builder.filter(...)` for how filters are applied during encoding.
  */
@@ -62,6 +65,46 @@ class FunctionFilter(
     }
 }
 
+/**
+ * A [FunctionFilter] that receives the key path as a [KeyPath] view instead of a `String`.
+ *
+ * A [FunctionFilter] costs one path String per visited node, even when the function only looks at
+ * the last key. A [KeyPath] answers `endsWith`, `startsWith`, `lastSegment` and character access
+ * from the encoder's own path segments, and builds the String only when `toString()` is called.
+ * The view is reused across calls; see [KeyPath] for ownership rules.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val f = PathFilter { path, value ->
+ *   if (path.lastSegment == "[password]") null else value // drop secrets
+ * }
+ * ```
+ *
+ * Java:
+ * ```java
+ * PathFilter f = new PathFilter((path, v) ->
+ *     path.endsWith("[password]") ? null : v);
+ * ```
+ */
+class PathFilter(
+    /** Function invoked for every key path/value; return `null` to exclude the entry. */
+    val function: (KeyPath, Any?) -> Any?
+) : Filter {
+    /** Java-friendly constructor accepting a {@link java.util.function.BiFunction}. */
+    constructor(
+        fn: BiFunction<KeyPath, Any?, Any?>
+    ) : this({ path, value -> fn.apply(path, value) })
+
+    companion object {
+        /** Java-friendly factory; e.g., `PathFilter.from((path, v) -> v)`. */
+        @JvmStatic
+        fun from(fn: BiFunction<KeyPath, Any?, Any?>): PathFilter = PathFilter { path, value ->
+            fn.apply(path, value)
+        }
+    }
+}
+
 /**
  * A filter backed by an [Iterable] that **selects** which keys/indices to include.
  *
@@ -95,3 +138,48 @@ class IterableFilter(val iterable: Iterable<*>) : Filter {
         @JvmStatic fun from(collection: Collection<*>): IterableFilter = IterableFilter(collection)
     }
 }
+
+/**
+ * A filter that **selects** key paths from an allowlist compiled once into a trie.
+ *
+ * Each pattern is a root key followed by `.name` or `[name]` segments, e.g. `user.name`,
+ * `items[0]` or `a[b.c]`. A segment `*` matches any single key or index, and a trailing `**` (or
+ * simply ending the pattern) selects the whole value below that path. Everything not reachable
+ * from a pattern is left out: the encoder only descends into selected children, looks each one up
+ * in constant time, and never visits unselected subtrees, so a small allowlist over a large
+ * object costs time in proportion to the allowlist.
+ *
+ * Notes:
+ * - Map keys and list indices are matched by their `String` form.
+ * - Exactly named keys are written in pattern order (as with [IterableFilter]); keys matched by
+ *   `*` keep the input order.
+ * - A scalar found where a pattern expects more segments is left out.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val f = AllowlistFilter("user.name", "items[*].id", "meta.**")
+ * ```
+ *
+ * Java:
+ * ```java
+ * AllowlistFilter f = AllowlistFilter.of("user.name", "items[*].id");
+ * ```
+ *
+ * @throws IllegalArgumentException when a pattern is empty or malformed, or uses `**` anywhere
+ *   but as its last segment.
+ */
+class AllowlistFilter(patterns: Iterable<String>) : Filter {
+    /** Kotlin/Java varargs constructor. */
+    constructor(vararg patterns: String) : this(patterns.asList())
+
+    /** The patterns this filter was compiled from. */
+    val patterns: List<String> = patterns.toList()
+
+    internal val trie: PathTrie = PathTrie.compile(this.patterns)
+
+    companion object {
+        /** Java-friendly factory with varargs; e.g., `AllowlistFilter.of("a.b", "c[*]")`. */
+        @JvmStatic fun of(vararg patterns: String): AllowlistFilter = AllowlistFilter(*patterns)
+    }
+}
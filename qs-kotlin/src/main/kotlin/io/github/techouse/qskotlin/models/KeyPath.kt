@@ -0,0 +1,58 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.internal.KeyPathNode
+
+/**
+ * Read-only view of the key path that a [PathFilter] is asked about, e.g. `a[b][0]`.
+ *
+ * The encoder keeps key paths as a chain of segments. This view answers [length], [get],
+ * [startsWith], [endsWith] and [lastSegment] from that chain without building the full path
+ * String; [toString] builds it (once per path) when the filter really needs it.
+ *
+ * Ownership rules:
+ * - One view is reused for every node of an encode call, so it is valid only during the filter
+ *   call it was passed to. Keep `toString()` instead of the view itself.
+ * - Like `StringBuilder`, a view does not override `equals`; compare with [contentEquals] or
+ *   `toString()`.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val f = PathFilter { path, value -> if (path.endsWith("[password]")) null else value }
+ * ```
+ *
+ * Java:
+ * ```java
+ * PathFilter f = PathFilter.from((path, v) -> path.startsWith("debug") ? null : v);
+ * ```
+ */
+class KeyPath internal constructor(internal var node: KeyPathNode) : CharSequence {
+    override val length: Int
+        get() = node.length
+
+    override fun get(index: Int): Char = node.charAt(index)
+
+    override fun subSequence(startIndex: Int, endIndex: Int): CharSequence =
+        toString().subSequence(startIndex, endIndex)
+
+    /**
+     * The last segment of the path as it was appended: the root key, `[b]` for a bracketed child
+     * or `.b` when dots are allowed.
+     */
+    val lastSegment: String
+        get() = node.lastSegment
+
+    /** `true` when the path starts with [prefix]. */
+    fun startsWith(prefix: CharSequence): Boolean = node.regionMatches(0, prefix)
+
+    /** `true` when the path ends with [suffix]. */
+    fun endsWith(suffix: CharSequence): Boolean =
+        node.regionMatches(node.length - suffix.length, suffix)
+
+    /** `true` when the path is exactly [other]. */
+    fun contentEquals(other: CharSequence): Boolean =
+        other.length == node.length && node.regionMatches(0, other)
+
+    /** The full path String. */
+    override fun toString(): String = node.materialize()
+}
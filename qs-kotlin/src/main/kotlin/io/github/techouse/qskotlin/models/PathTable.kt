@@ -0,0 +1,134 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.internal.Decoder
+import io.github.techouse.qskotlin.internal.Utils
+import java.util.function.BiConsumer
+
+/**
+ * Flat, columnar view of a decoded query string.
+ *
+ * Row `i` holds the decoded flat key ([key]), its segmented path ([path]) and its decoded value
+ * ([value]). Rows keep the order in which keys first appear in the input, and duplicate keys are
+ * already combined according to [DecodeOptions.duplicates]. Nothing is nested or merged until
+ * [toMap] is called.
+ *
+ * Paths are split with the same depth, dot and bracket rules as `QS.decode`; bracket segments are
+ * returned without their brackets and a `[]` append yields an empty segment. For example,
+ * `a[b][0]=c` produces the path `["a", "b", "0"]` and the value `"c"`.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val table = QS.decodePathTable("a[b]=c&d=e")
+ * table.paths  // [[a, b], [d]]
+ * table.values // [c, e]
+ * table.toMap() // {a={b=c}, d=e}
+ * ```
+ *
+ * Java:
+ * ```java
+ * PathTable table = QS.decodePathTable("a[b]=c&d=e");
+ * table.forEach((path, value) -> log.info("{} = {}", path, value));
+ * ```
+ */
+class PathTable
+internal constructor(
+    private val keyColumn: Array<String>,
+    private val pathColumn: Array<List<String>>,
+    private val valueColumn: Array<Any?>,
+    private val options: DecodeOptions,
+) {
+    /** Number of rows in the table. */
+    val size: Int
+        get() = keyColumn.size
+
+    /** Decoded flat keys, one per row (e.g. `a[b][0]`). */
+    val keys: List<String> = keyColumn.asList()
+
+    /** Segmented paths, one per row (e.g. `["a", "b", "0"]`). */
+    val paths: List<List<String>> = pathColumn.asList()
+
+    /** Decoded values, one per row; comma-split or combined duplicates are Lists. */
+    val values: List<Any?> = valueColumn.asList()
+
+    /** Returns `true` when the table holds no rows. */
+    fun isEmpty(): Boolean = keyColumn.isEmpty()
+
+    /** Decoded flat key of the row at [index]. */
+    fun key(index: Int): String = keyColumn[index]
+
+    /** Segmented path of the row at [index]. */
+    fun path(index: Int): List<String> = pathColumn[index]
+
+    /** Decoded value of the row at [index]. */
+    fun value(index: Int): Any? = valueColumn[index]
+
+    /** Invoke [action] with every `(path, value)` row, in input order. */
+    fun forEach(action: BiConsumer<List<String>, Any?>) {
+        for (i in keyColumn.indices) {
+            action.accept(pathColumn[i], valueColumn[i])
+        }
+    }
+
+    /**
+     * Materialize the nested Map that `QS.decode` returns for the same input and options.
+     *
+     * Each call builds a fresh Map; the table itself is left untouched.
+     */
+    fun toMap(): Map<String, Any?> {
+        if (keyColumn.isEmpty()) return emptyMap()
+
+        val flat = LinkedHashMap<String, Any?>(keyColumn.size * 2)
+        for (i in keyColumn.indices) {
+            flat[keyColumn[i]] = detach(valueColumn[i])
+        }
+
+        return Decoder.assemble(flat, options, decodeFromString = true)
+    }
+
+    override fun toString(): String =
+        (0 until size).joinToString(prefix = "PathTable(", postfix = ")") { i ->
+            "${pathColumn[i]}=${valueColumn[i]}"
+        }
+
+    internal companion object {
+        /** Build a table from the flat pairs produced by `Decoder.parseQueryStringValues`. */
+        fun fromFlat(flat: Map<String, Any?>, options: DecodeOptions): PathTable {
+            val keys = arrayOfNulls<String>(flat.size)
+            val paths = arrayOfNulls<List<String>>(flat.size)
+            val values = arrayOfNulls<Any?>(flat.size)
+
+            var i = 0
+            for ((key, value) in flat) {
+                keys[i] = key
+                paths[i] = Decoder.splitKeyIntoPath(key, options)
+                values[i] = value
+                i++
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            return PathTable(
+                keyColumn = keys as Array<String>,
+                pathColumn = paths as Array<List<String>>,
+                valueColumn = values,
+                options = options,
+            )
+        }
+
+        /**
+         * Copy mutable containers so that merges performed by [toMap] never write back into the
+         * table's own values.
+         */
+        private fun detach(value: Any?): Any? =
+            when (value) {
+                is Utils.OverflowMap ->
+                    Utils.OverflowMap().also { copy ->
+                        for ((k, v) in value) copy[k] = detach(v)
+                        copy.maxIndex = value.maxIndex
+                    }
+
+                is List<*> -> value.mapTo(ArrayList(value.size)) { detach(it) }
+                else -> value
+            }
+    }
+}
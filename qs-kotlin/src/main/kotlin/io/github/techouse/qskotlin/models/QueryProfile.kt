@@ -0,0 +1,55 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.enums.Sentinel
+
+/**
+ * Shape statistics of a raw query string, produced by `QS.profile` without decoding it.
+ *
+ * All lengths are measured on the raw (still percent-encoded) input, so they are upper bounds of
+ * the decoded sizes. Use them for admission control: reject or reroute a request whose profile
+ * exceeds what you are willing to decode.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val profile = QS.profile("a[b][c]=d&e[25]=f")
+ * profile.parameterCount // 2
+ * profile.maxDepth       // 2
+ * profile.maxIndex       // 25
+ * ```
+ *
+ * Java:
+ * ```java
+ * QueryProfile profile = QS.profile(query);
+ * if (profile.getParameterCount() > 100) reject();
+ * ```
+ */
+data class QueryProfile(
+    /** Length of the input in characters. */
+    val length: Int,
+
+    /** Number of non-empty parameters (the charset sentinel included), ignoring parameterLimit. */
+    val parameterCount: Int,
+
+    /**
+     * Largest number of nested segments below the root key, e.g. `1` for `a[b]` and `2` for
+     * `a[b][c]` (or `a.b.c` when dots are allowed). Compare against [DecodeOptions.depth].
+     */
+    val maxDepth: Int,
+
+    /** Largest numeric bracket index such as `25` in `a[25]`, or `-1` when there is none. */
+    val maxIndex: Int,
+
+    /** Length of the longest raw key. */
+    val longestKey: Int,
+
+    /** Length of the longest raw value. */
+    val longestValue: Int,
+
+    /** The `utf8=` charset sentinel found in the input, or `null` when there is none. */
+    val charsetSentinel: Sentinel?,
+) {
+    /** `true` when the input carries a recognized `utf8=` charset sentinel. */
+    val hasCharsetSentinel: Boolean
+        get() = charsetSentinel != null
+}
@@ -0,0 +1,149 @@
+package io.github.techouse.qskotlin.models
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Bounded, lock-free intern pool for decoded keys and short values.
+ *
+ * Plug a single instance into [DecodeOptions.stringPool] and share it across requests: recurring
+ * keys (`page`, `sort`, `filter`) and small enumerated values (`asc`, `true`, `1`) then resolve to
+ * one canonical [String] instance instead of a fresh copy per decode.
+ *
+ * The pool is a direct-mapped table of [capacity] slots (rounded up to a power of two). A lookup
+ * hashes the raw character slice, so a hit never allocates; a miss creates the String and replaces
+ * whatever occupied the slot. Memory is therefore bounded by `capacity` strings of at most
+ * [maxLength] characters. All operations are thread-safe without locking.
+ *
+ * Use [hitCount], [missCount] and [hitRate] to size the pool for your traffic.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val pool = StringPool(capacity = 4096, maxLength = 32)
+ * val options = DecodeOptions(stringPool = pool)
+ * QS.decode("page=1&sort=asc", options)
+ * ```
+ *
+ * Java:
+ * ```java
+ * StringPool pool = new StringPool(4096, 32);
+ * DecodeOptions options = DecodeOptions.builder().stringPool(pool).build();
+ * ```
+ */
+class StringPool
+@JvmOverloads
+constructor(capacity: Int = DEFAULT_CAPACITY, val maxLength: Int = DEFAULT_MAX_LENGTH) {
+    /** Number of slots in the pool (a power of two). */
+    val capacity: Int
+
+    private val mask: Int
+    private val slots: AtomicReferenceArray<String>
+    private val hits = LongAdder()
+    private val misses = LongAdder()
+
+    init {
+        require(capacity > 0) { "Capacity must be positive" }
+        require(capacity <= MAX_CAPACITY) { "Capacity must not exceed $MAX_CAPACITY" }
+        require(maxLength >= 0) { "Max length must be non-negative" }
+
+        this.capacity = if (capacity == 1) 1 else Integer.highestOneBit(capacity - 1) shl 1
+        mask = this.capacity - 1
+        slots = AtomicReferenceArray(this.capacity)
+    }
+
+    /**
+     * Return the canonical instance for `input[start, end)`.
+     *
+     * The slice is compared in place; a String is only created when the pool does not yet hold an
+     * equal one. Slices longer than [maxLength] bypass the pool and are not counted.
+     */
+    @JvmOverloads
+    fun intern(input: CharSequence, start: Int = 0, end: Int = input.length): String {
+        val length = end - start
+        if (length > maxLength) return slice(input, start, end)
+
+        var hash = 0
+        for (i in start until end) {
+            hash = 31 * hash + input[i].code
+        }
+
+        val index = spread(hash) and mask
+        val cached = slots.get(index)
+        if (
+            cached != null &&
+                cached.length == length &&
+                cached.hashCode() == hash &&
+                matches(cached, input, start)
+        ) {
+            hits.increment()
+            return cached
+        }
+
+        misses.increment()
+        val created = slice(input, start, end)
+        slots.lazySet(index, created)
+        return created
+    }
+
+    /** Number of lookups answered from the pool. */
+    val hitCount: Long
+        get() = hits.sum()
+
+    /** Number of lookups that had to create a new String. */
+    val missCount: Long
+        get() = misses.sum()
+
+    /** Fraction of counted lookups answered from the pool, or `0.0` before the first lookup. */
+    val hitRate: Double
+        get() {
+            val h = hits.sum()
+            val total = h + misses.sum()
+            return if (total == 0L) 0.0 else h.toDouble() / total
+        }
+
+    /** Number of occupied slots. This is a snapshot and may race with concurrent lookups. */
+    val size: Int
+        get() {
+            var count = 0
+            for (i in 0 until capacity) {
+                if (slots.get(i) != null) count++
+            }
+            return count
+        }
+
+    /** Drop all pooled strings and reset the statistics. */
+    fun clear() {
+        for (i in 0 until capacity) {
+            slots.set(i, null)
+        }
+        hits.reset()
+        misses.reset()
+    }
+
+    override fun toString(): String =
+        "StringPool(capacity=$capacity, maxLength=$maxLength, hits=$hitCount, misses=$missCount)"
+
+    companion object {
+        /** Default number of slots. */
+        const val DEFAULT_CAPACITY: Int = 1_024
+
+        /** Default maximum length of pooled strings. */
+        const val DEFAULT_MAX_LENGTH: Int = 32
+
+        private const val MAX_CAPACITY: Int = 1 shl 30
+
+        private fun spread(hash: Int): Int = hash xor (hash ushr 16)
+
+        private fun slice(input: CharSequence, start: Int, end: Int): String =
+            if (input is String && start == 0 && end == input.length) input
+            else input.subSequence(start, end).toString()
+
+        private fun matches(cached: String, input: CharSequence, start: Int): Boolean {
+            for (i in cached.indices) {
+                if (cached[i] != input[start + i]) return false
+            }
+            return true
+        }
+    }
+}
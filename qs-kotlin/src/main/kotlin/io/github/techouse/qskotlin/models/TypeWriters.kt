@@ -0,0 +1,117 @@
+package io.github.techouse.qskotlin.models
+
+import io.github.techouse.qskotlin.internal.ClassCache
+import io.github.techouse.qskotlin.internal.Scratch
+
+/** Writes the text of a leaf value of type [T]; the library percent-encodes it afterwards. */
+fun interface ValueWriter<in T> {
+    fun write(value: T, out: StringBuilder)
+}
+
+/**
+ * Immutable registry of per-type [ValueWriter]s for [EncodeOptions.typeWriters].
+ *
+ * A value whose class (or a superclass or interface of it) has a registered writer is encoded as
+ * the text the writer appends, instead of its `toString()`. The text is then percent-encoded like
+ * any other value, or passed to a custom [EncodeOptions.encoder]. A registered type is always
+ * treated as a leaf, even if it is a Map or an Iterable (`java.nio.file.Path`, for example).
+ *
+ * The writer for each class is resolved once and cached per [TypeWriters] instance, so a lookup
+ * costs one hash probe per value; the cache holds every class it has seen, so keep one instance
+ * rather than building a new one per call. The most specific registration wins: the class itself,
+ * then its superclasses, then its interfaces. Built-in types without a registration keep their
+ * default encoding and their own dispatch: the registry supplements it and does not replace it.
+ *
+ * ### Examples
+ * Kotlin:
+ * ```kotlin
+ * val writers =
+ *     TypeWriters.builder()
+ *         .register<BigDecimal> { value, out -> out.append(value.toPlainString()) }
+ *         .register<UUID> { value, out -> out.append(value.toString().replace("-", "")) }
+ *         .build()
+ * QS.encode(mapOf("amount" to BigDecimal("1E+3")), EncodeOptions(typeWriters = writers))
+ * // amount=1000
+ * ```
+ *
+ * Java:
+ * ```java
+ * TypeWriters writers = TypeWriters.builder()
+ *     .register(BigDecimal.class, (value, out) -> out.append(value.toPlainString()))
+ *     .build();
+ * ```
+ */
+class TypeWriters private constructor(private val writers: Map<Class<*>, ValueWriter<Any?>>) {
+    private val resolved = ClassCache { type -> resolve(type) ?: NO_WRITER }
+
+    /** Registered types, in registration order. */
+    val types: Set<Class<*>>
+        get() = writers.keys
+
+    /** `true` when values of [type] are written by a registered writer. */
+    fun handles(type: Class<*>): Boolean = resolved.get(type) !== NO_WRITER
+
+    /** Returns the text written for [value], or `null` when no writer handles its class. */
+    internal fun write(value: Any): String? {
+        val writer = resolved.get(value.javaClass)
+        if (writer === NO_WRITER) return null
+        return Scratch.withBuilder { out ->
+            writer.write(value, out)
+            out.toString()
+        }
+    }
+
+    private fun resolve(type: Class<*>): ValueWriter<Any?>? {
+        var current: Class<*>? = type
+        while (current != null) {
+            writers[current]?.let {
+                return it
+            }
+            current = current.superclass
+        }
+
+        // Breadth-first over the interfaces of the class and of each superclass.
+        val queue = ArrayDeque<Class<*>>()
+        current = type
+        while (current != null) {
+            queue.addAll(current.interfaces)
+            current = current.superclass
+        }
+        val visited = HashSet<Class<*>>()
+        while (queue.isNotEmpty()) {
+            val next = queue.removeFirst()
+            if (!visited.add(next)) continue
+            writers[next]?.let {
+                return it
+            }
+            queue.addAll(next.interfaces)
+        }
+        return null
+    }
+
+    /** Builder for [TypeWriters]; a later registration for the same type replaces the earlier. */
+    class Builder {
+        private val writers = LinkedHashMap<Class<*>, ValueWriter<Any?>>()
+
+        /** Register [writer] for [type] and its subtypes. Primitive classes map to their boxes. */
+        fun <T : Any> register(type: Class<T>, writer: ValueWriter<T>) = apply {
+            @Suppress("UNCHECKED_CAST")
+            writers[type.kotlin.javaObjectType] = writer as ValueWriter<Any?>
+        }
+
+        /** Kotlin shorthand for `register(T::class.java, writer)`. */
+        inline fun <reified T : Any> register(writer: ValueWriter<T>) =
+            register(T::class.java, writer)
+
+        /** Build an immutable [TypeWriters] with the registered writers. */
+        fun build(): TypeWriters = TypeWriters(LinkedHashMap(writers))
+    }
+
+    companion object {
+        /** Cached for classes that no registered writer handles. */
+        private val NO_WRITER = ValueWriter<Any?> { _, _ -> }
+
+        /** Obtain a builder. */
+        @JvmStatic fun builder(): Builder = Builder()
+    }
+}
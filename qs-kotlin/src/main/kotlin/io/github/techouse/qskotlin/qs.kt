@@ -5,23 +5,31 @@ package io.github.techouse.qskotlin
 
 import io.github.techouse.qskotlin.enums.ListFormat
 import io.github.techouse.qskotlin.enums.Sentinel
+import io.github.techouse.qskotlin.internal.BatchDecoder
+import io.github.techouse.qskotlin.internal.DecodeBudget
+import io.github.techouse.qskotlin.internal.Deadline
 import io.github.techouse.qskotlin.internal.Decoder
 import io.github.techouse.qskotlin.internal.Encoder
-import io.github.techouse.qskotlin.internal.Utils
+import io.github.techouse.qskotlin.internal.KeyPathNode
+import io.github.techouse.qskotlin.internal.PrimitiveArrays
+import io.github.techouse.qskotlin.internal.Scratch
+import io.github.techouse.qskotlin.models.AllowlistFilter
+import io.github.techouse.qskotlin.models.BatchDecodeStats
+import io.github.techouse.qskotlin.models.DecodeBuffer
 import io.github.techouse.qskotlin.models.DecodeOptions
 import io.github.techouse.qskotlin.models.EncodeOptions
 import io.github.techouse.qskotlin.models.FunctionFilter
 import io.github.techouse.qskotlin.models.IterableFilter
+import io.github.techouse.qskotlin.models.KeyPath
+import io.github.techouse.qskotlin.models.PathFilter
+import io.github.techouse.qskotlin.models.PathTable
+import io.github.techouse.qskotlin.models.QueryProfile
+import io.github.techouse.qskotlin.models.StringPool
 import java.nio.charset.StandardCharsets
-
-private fun hasStructuredSyntax(key: String, allowDots: Boolean): Boolean =
-    when {
-        key.indexOf('[') >= 0 -> true
-        !allowDots -> false
-        key.indexOf('.') >= 0 -> true
-        key.indexOf('%') < 0 -> false
-        else -> key.contains("%2E") || key.contains("%2e")
-    }
+import java.util.concurrent.Executor
+import java.util.function.BiConsumer
+import java.util.stream.IntStream
+import java.util.stream.Stream
 
 /**
  * Decode a query [String] or a [Map] into a [Map<String, Any?>].
@@ -48,106 +56,157 @@ fun decode(input: Any?, options: DecodeOptions? = null): Map<String, Any?> {
         return emptyMap()
     }
 
+    val budget = DecodeBudget.of(options)
     val tempObj: MutableMap<String, Any?>? =
         when (input) {
-            is String -> Decoder.parseQueryStringValues(input, options)
+            is String -> Decoder.parseQueryStringValues(input, options, budget)
             is Map<*, *> -> input.mapKeys { it.key.toString() }.toMutableMap()
             else -> null
         }
 
-    val decodeFromString = input is String
-    if (decodeFromString && tempObj?.isNotEmpty() == true) {
-        val allowDots = options.getAllowDots
-        val hasAnyStructuredSyntax = tempObj.keys.any { key -> hasStructuredSyntax(key, allowDots) }
-        if (!hasAnyStructuredSyntax) {
-            return Utils.compact(tempObj, options.allowSparseLists)
-        }
-    }
+    return Decoder.assemble(tempObj, options, decodeFromString = input is String, budget)
+}
 
-    var obj = mutableMapOf<String, Any?>()
-
-    if (tempObj?.isNotEmpty() == true) {
-        val structuredRoots =
-            if (decodeFromString) {
-                fun leadingStructuredRoot(key: String): String {
-                    val segments =
-                        Decoder.splitKeyIntoSegments(
-                            originalKey = key,
-                            allowDots = options.getAllowDots,
-                            maxDepth = options.depth,
-                            strictDepth = options.strictDepth,
-                        )
-                    val first = segments.firstOrNull() ?: return key
-                    if (!first.startsWith('[')) return first
-
-                    val last = first.lastIndexOf(']')
-                    val cleanRoot = if (last > 0) first.substring(1, last) else first.substring(1)
-                    // `[]` parses as a top-level list, which merges through index "0".
-                    return cleanRoot.ifEmpty { "0" }
-                }
+/**
+ * Decode many query strings, in parallel, and return the results in input order.
+ *
+ * The batch resolves [options] once and shares a key-segment cache and a [StringPool] (unless
+ * [options] already carries one) across all inputs, so recurring keys are split and interned only
+ * once. Each input is decoded exactly as [decode] would; `null` and empty inputs yield an empty
+ * Map. Custom decoders must be thread-safe.
+ *
+ * @param inputs [Iterable] the query strings to decode
+ * @param options [DecodeOptions] optional decoder settings, applied to every input
+ * @param executor [Executor] where chunks of inputs are decoded; the common `ForkJoinPool` when
+ *   `null`
+ * @return [List] the decoded Maps, in input order
+ */
+@Throws(IndexOutOfBoundsException::class)
+@JvmOverloads
+fun decodeAll(
+    inputs: Iterable<String?>,
+    options: DecodeOptions? = null,
+    executor: Executor? = null,
+): List<Map<String, Any?>> {
+    val results: MutableList<Map<String, Any?>> =
+        if (inputs is Collection<*>) ArrayList(inputs.size) else ArrayList()
+    decodeAll(inputs, options, executor) { _, result -> results.add(result) }
+    return results
+}
 
-                buildSet {
-                    for (key in tempObj.keys) {
-                        val bracketIndex = key.indexOf('[').takeIf { it >= 0 } ?: Int.MAX_VALUE
-                        val hasPercent = key.indexOf('%') >= 0
-                        val dotIndex =
-                            if (options.getAllowDots) {
-                                key.indexOf('.').takeIf { it >= 0 } ?: Int.MAX_VALUE
-                            } else {
-                                Int.MAX_VALUE
-                            }
-                        val encodedDotIndex =
-                            if (options.getAllowDots && hasPercent) {
-                                minOf(
-                                    key.indexOf("%2E").takeIf { it >= 0 } ?: Int.MAX_VALUE,
-                                    key.indexOf("%2e").takeIf { it >= 0 } ?: Int.MAX_VALUE,
-                                )
-                            } else {
-                                Int.MAX_VALUE
-                            }
-
-                        val splitAt = minOf(bracketIndex, dotIndex, encodedDotIndex)
-                        if (splitAt != Int.MAX_VALUE) {
-                            if (splitAt == 0) {
-                                add(leadingStructuredRoot(key))
-                            } else {
-                                add(key.substring(0, splitAt))
-                            }
-                        }
-                    }
-                }
-            } else {
-                emptySet()
-            }
+/**
+ * Decode a [Stream] of query strings; see [decodeAll].
+ *
+ * The stream is consumed sequentially; the decoding itself runs on [executor]. The stream is not
+ * closed; that stays with the caller, e.g. in a try-with-resources block.
+ */
+@Throws(IndexOutOfBoundsException::class)
+@JvmOverloads
+fun decodeAll(
+    inputs: Stream<String?>,
+    options: DecodeOptions? = null,
+    executor: Executor? = null,
+): List<Map<String, Any?>> = decodeAll(Iterable { inputs.iterator() }, options, executor)
 
-        for ((key, value) in tempObj) {
-            if (decodeFromString) {
-                val hasStructuredKeySyntax = hasStructuredSyntax(key, options.getAllowDots)
+/**
+ * Decode many query strings, in parallel, and stream each result to [consumer] in input order.
+ *
+ * Unlike the List-returning overload, only a bounded number of inputs and results is held at any
+ * time, so this suits unbounded sources such as access logs. [consumer] runs on the calling
+ * thread; an exception from it, or from decoding, stops the batch.
+ *
+ * @param inputs [Iterable] the query strings to decode
+ * @param options [DecodeOptions] optional decoder settings, applied to every input
+ * @param executor [Executor] where chunks of inputs are decoded; the common `ForkJoinPool` when
+ *   `null`
+ * @param consumer receives the zero-based input index and its decoded Map
+ * @return [BatchDecodeStats] the number of inputs decoded and the throughput
+ */
+@Throws(IndexOutOfBoundsException::class)
+@JvmSynthetic
+fun decodeAll(
+    inputs: Iterable<String?>,
+    options: DecodeOptions?,
+    executor: Executor?,
+    consumer: (index: Long, result: Map<String, Any?>) -> Unit,
+): BatchDecodeStats =
+    BatchDecoder.decodeAll(inputs.iterator(), options ?: DecodeOptions(), executor, consumer)
 
-                if (!hasStructuredKeySyntax && key !in structuredRoots) {
-                    obj[key] = value
-                    continue
-                }
-            }
+/**
+ * Java-friendly [decodeAll] streaming each result to a {@link java.util.function.BiConsumer}.
+ *
+ * Java sees only this overload, so an implicitly typed lambda is never ambiguous:
+ * ```java
+ * QS.decodeAll(lines, options, null, (index, result) -> sink.write(index, result));
+ * ```
+ */
+@Throws(IndexOutOfBoundsException::class)
+fun decodeAll(
+    inputs: Iterable<String?>,
+    options: DecodeOptions?,
+    executor: Executor?,
+    consumer: BiConsumer<Long, Map<String, Any?>>,
+): BatchDecodeStats =
+    decodeAll(inputs, options, executor) { index, result -> consumer.accept(index, result) }
 
-            val parsed = Decoder.parseKeys(key, value, options, decodeFromString)
+/**
+ * Decode a query [String] into the recyclable [buffer].
+ *
+ * When [input] has the same shape (the same raw keys, in order) as the previous query decoded
+ * into [buffer], the previous result is refilled in place instead of building new Maps and Lists.
+ * The returned Map is owned by [buffer] and is only valid until the next call with it; see
+ * [DecodeBuffer] for the ownership rules. The result always equals `decode(input,
+ * buffer.options)`.
+ *
+ * @param input [String] the query string to decode
+ * @param buffer [DecodeBuffer] the buffer, and options, to decode with
+ * @return [Map<String, Any?>] the decoded Map, valid until the next call with [buffer]
+ */
+@Throws(IllegalArgumentException::class, IndexOutOfBoundsException::class)
+fun decodeInto(input: String?, buffer: DecodeBuffer): Map<String, Any?> = buffer.decode(input)
 
-            if (obj.isEmpty() && parsed is MutableMap<*, *>) {
-                @Suppress("UNCHECKED_CAST")
-                obj = parsed as MutableMap<String, Any?>
-                continue
-            }
+/**
+ * Decode a query [String] into a flat [PathTable] of `(path, value)` rows.
+ *
+ * Keys and values are decoded exactly as in [decode], but no nested structure is built; call
+ * [PathTable.toMap] to materialize the same Map that [decode] would return.
+ *
+ * @param input [String] the query string to decode
+ * @param options [DecodeOptions] optional decoder settings
+ * @return [PathTable] the decoded rows, in input order
+ */
+@Throws(IllegalArgumentException::class, IndexOutOfBoundsException::class)
+@JvmOverloads
+fun decodePathTable(input: String?, options: DecodeOptions? = null): PathTable {
+    val options = options ?: DecodeOptions()
 
-            @Suppress("UNCHECKED_CAST")
-            obj = Utils.merge(obj, parsed, options) as MutableMap<String, Any?>
-        }
+    if (input.isNullOrEmpty()) {
+        return PathTable.fromFlat(emptyMap(), options)
     }
 
-    return Utils.compact(obj, options.allowSparseLists)
+    return PathTable.fromFlat(Decoder.parseQueryStringValues(input, options), options)
 }
 
 /**
- * Encode a [Map] or [Iterable] into a query string.
+ * Profile a query [String] without decoding it.
+ *
+ * A single pass counts the parameters and measures the deepest key, the largest numeric index,
+ * the longest raw key and value and whether a charset sentinel is present. It uses the same
+ * delimiter and bracket rules as [decode] but allocates no substrings, so it is cheap enough to
+ * run on every request before deciding whether (and where) to decode it.
+ *
+ * @param input [String] the raw query string
+ * @param options [DecodeOptions] optional decoder settings (delimiter, prefix and dot rules)
+ * @return [QueryProfile] the profile of [input]
+ */
+@JvmOverloads
+fun profile(input: String?, options: DecodeOptions? = null): QueryProfile =
+    Decoder.profile(input.orEmpty(), options ?: DecodeOptions())
+
+/**
+ * Encode a [Map] or [Iterable] into a query string. A [Sequence], Java stream or [Iterator] is
+ * read once, like an [Iterable]; nested ones are pulled element by element without being copied.
+ * Primitive arrays other than [ByteArray] are encoded as lists.
  *
  * @param data [Any?] the data to encode
  * @param options [EncodeOptions] optional encoder settings
@@ -160,28 +219,58 @@ fun encode(data: Any?, options: EncodeOptions? = null): String {
 
     if (data == null) return ""
 
-    var obj: Map<String, Any?> =
-        when (data) {
-            is Map<*, *> -> data.mapKeys { it.key.toString() }
-            is Iterable<*> ->
-                buildMap {
-                    var i = 0
-                    for (v in data) put((i++).toString(), v)
+    val deadline = Deadline.of(options.timeBudget, options.cancellationToken)
+
+    // The common flat Map<String, scalar> is written straight from the caller's map, without the
+    // root copy below or a traversal per key. Roots eligible for parallel encoding are left alone.
+    if (
+        data is Map<*, *> &&
+            options.filter == null &&
+            options.sort == null &&
+            !(options.parallel && data.size >= options.parallelThreshold)
+    ) {
+        val flat =
+            Scratch.withBuilder { payload ->
+                if (Encoder.tryEncodeFlat(data, options, deadline, payload)) {
+                    finishPayload(payload, options)
+                } else {
+                    null
                 }
+            }
+        if (flat != null) return flat
+    }
 
-            else -> emptyMap()
-        }
+    // A root `**` selects everything, which is the same as having no selection.
+    val allowlist = (options.filter as? AllowlistFilter)?.trie?.takeUnless { it.terminal }
 
-    val payload = StringBuilder()
-    var hasPayload = false
+    var obj: Map<String, Any?> =
+        when {
+            // Without a root wildcard only the allowlisted root keys are looked up.
+            data is Map<*, *> && allowlist != null && allowlist.any == null ->
+                buildMap {
+                    for (key in Encoder.selectedMapKeys(data, allowlist.names)) {
+                        put(key.toString(), data[key])
+                    }
+                }
 
-    fun appendPart(part: Any?) {
-        if (hasPayload) {
-            payload.append(options.delimiter.value)
+            data is Map<*, *> -> data.mapKeys { it.key.toString() }
+            else -> {
+                val items =
+                    when {
+                        data is Iterable<*> -> data
+                        PrimitiveArrays.size(data) >= 0 -> PrimitiveArrays.boxed(data)
+                        else -> Encoder.lazyIterable(data)
+                    }
+                if (items == null) {
+                    emptyMap()
+                } else {
+                    buildMap {
+                        var i = 0
+                        for (v in items) put((i++).toString(), v)
+                    }
+                }
+            }
         }
-        payload.append(part.toString())
-        hasPayload = true
-    }
 
     if (obj.isEmpty()) {
         return ""
@@ -202,6 +291,18 @@ fun encode(data: Any?, options: EncodeOptions? = null): String {
             }
         }
 
+        is PathFilter -> {
+            try {
+                val filtered = filter.function(KeyPath(KeyPathNode.fromMaterialized("")), obj)
+                @Suppress("UNCHECKED_CAST")
+                if (filtered is Map<*, *>) {
+                    obj = filtered as Map<String, Any?>
+                }
+            } catch (_: Exception) {
+                // Handle function execution error
+            }
+        }
+
         is IterableFilter -> {
             objKeys = filter.iterable.toList()
         }
@@ -219,74 +320,114 @@ fun encode(data: Any?, options: EncodeOptions? = null): String {
         objKeys = objKeys.sortedWith(options.sort)
     }
 
-    for (i: Int in objKeys.indices) {
-        val key: Any? = objKeys[i]
+    val root: Map<String, Any?> = obj
+    val keys: List<*> = objKeys
 
-        if (key !is String? || (obj[key] == null && options.skipNulls)) {
-            continue
+    /** Encode one root entry; `null` when it is skipped. */
+    fun encodeKey(key: Any?, deadline: Deadline?): Any? {
+        if (key !is String? || (root[key] == null && options.skipNulls)) {
+            return null
         }
+        val selection = allowlist?.let { it.child(key.toString()) ?: return null }
+
+        return Encoder.encode(
+            data = root[key],
+            undefined = !root.containsKey(key),
+            prefix = key,
+            generateArrayPrefix = options.getListFormat.generator,
+            commaRoundTrip =
+                options.getListFormat.generator == ListFormat.COMMA.generator &&
+                    options.commaRoundTrip == true,
+            commaCompactNulls =
+                options.getListFormat.generator == ListFormat.COMMA.generator &&
+                    options.commaCompactNulls,
+            allowEmptyLists = options.allowEmptyLists,
+            strictNullHandling = options.strictNullHandling,
+            skipNulls = options.skipNulls,
+            encodeDotInKeys = options.encodeDotInKeys,
+            encoder =
+                if (options.encode)
+                    { value, charset, format -> options.getEncoder(value, charset, format) }
+                else null,
+            serializeDate = { date -> options.getDateSerializer(date) },
+            filter = options.filter,
+            sort = options.sort,
+            allowDots = options.getAllowDots,
+            format = options.format,
+            formatter = options.formatter,
+            encodeValuesOnly = options.encodeValuesOnly,
+            charset = options.charset,
+            addQueryPrefix = options.addQueryPrefix,
+            deadline = deadline,
+            assumeAcyclic = options.assumeAcyclic,
+            maxDepth = options.maxDepth,
+            defaultEncoder = options.encode && !options.hasCustomEncoder,
+            typeWriters = options.typeWriters,
+            selection = selection?.takeUnless { it.terminal },
+        )
+    }
 
-        val encoded: Any =
-            Encoder.encode(
-                data = obj[key],
-                undefined = !obj.containsKey(key),
-                prefix = key,
-                generateArrayPrefix = options.getListFormat.generator,
-                commaRoundTrip =
-                    options.getListFormat.generator == ListFormat.COMMA.generator &&
-                        options.commaRoundTrip == true,
-                commaCompactNulls =
-                    options.getListFormat.generator == ListFormat.COMMA.generator &&
-                        options.commaCompactNulls,
-                allowEmptyLists = options.allowEmptyLists,
-                strictNullHandling = options.strictNullHandling,
-                skipNulls = options.skipNulls,
-                encodeDotInKeys = options.encodeDotInKeys,
-                encoder =
-                    if (options.encode)
-                        { value, charset, format -> options.getEncoder(value, charset, format) }
-                    else null,
-                serializeDate = { date -> options.getDateSerializer(date) },
-                filter = options.filter,
-                sort = options.sort,
-                allowDots = options.getAllowDots,
-                format = options.format,
-                formatter = options.formatter,
-                encodeValuesOnly = options.encodeValuesOnly,
-                charset = options.charset,
-                addQueryPrefix = options.addQueryPrefix,
-            )
-
-        when (encoded) {
-            is Iterable<*> -> {
-                for (part in encoded) {
-                    appendPart(part)
+    // Parallel mode encodes each root entry into its own part list, then joins them below in key
+    // order, so the output matches the sequential path byte for byte.
+    val parts: Array<Any?>? =
+        if (options.parallel && keys.size >= options.parallelThreshold) {
+            arrayOfNulls<Any?>(keys.size).also { out ->
+                IntStream.range(0, keys.size).parallel().forEach { i ->
+                    out[i] = encodeKey(keys[i], deadline?.fork())
                 }
             }
-            else -> appendPart(encoded)
+        } else {
+            null
         }
-    }
 
-    val payloadHasText = payload.isNotEmpty()
-    val out: StringBuilder = StringBuilder()
+    // The payload builder is borrowed from a per-thread arena and copied out before it is returned.
+    return Scratch.withBuilder { payload ->
+        var hasPayload = false
 
-    if (options.addQueryPrefix) {
-        out.append('?')
-    }
+        fun appendPart(part: Any?) {
+            if (hasPayload) {
+                payload.append(options.delimiter.value)
+            }
+            payload.append(part.toString())
+            hasPayload = true
+        }
 
-    if (options.charsetSentinel) {
-        when (options.charset) {
-            // encodeURIComponent('&#10003') - numeric entity checkmark
-            StandardCharsets.ISO_8859_1 -> out.append(Sentinel.ISO)
-            // encodeURIComponent('✓')
-            StandardCharsets.UTF_8 -> out.append(Sentinel.CHARSET)
+        for (i: Int in keys.indices) {
+            when (val encoded = if (parts != null) parts[i] else encodeKey(keys[i], deadline)) {
+                null -> continue
+                is Iterable<*> -> {
+                    for (part in encoded) {
+                        appendPart(part)
+                    }
+                }
+                else -> appendPart(encoded)
+            }
         }
-        if (payloadHasText) out.append(options.delimiter.value)
+
+        finishPayload(payload, options)
     }
+}
+
+/** Prepend the query prefix and charset sentinel requested by [options] to [payload]. */
+private fun finishPayload(payload: StringBuilder, options: EncodeOptions): String {
+    if (options.addQueryPrefix || options.charsetSentinel) {
+        val head = StringBuilder()
+        if (options.addQueryPrefix) {
+            head.append('?')
+        }
+
+        if (options.charsetSentinel) {
+            when (options.charset) {
+                // encodeURIComponent('&#10003') - numeric entity checkmark
+                StandardCharsets.ISO_8859_1 -> head.append(Sentinel.ISO)
+                // encodeURIComponent('✓')
+                StandardCharsets.UTF_8 -> head.append(Sentinel.CHARSET)
+            }
+            if (payload.isNotEmpty()) head.append(options.delimiter.value)
+        }
 
-    if (payloadHasText) {
-        out.append(payload)
+        payload.insert(0, head)
     }
 
-    return out.toString()
+    return payload.toString()
 }
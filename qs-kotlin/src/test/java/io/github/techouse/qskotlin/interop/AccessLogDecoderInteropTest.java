@@ -0,0 +1,48 @@
+package io.github.techouse.qskotlin.interop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.techouse.qskotlin.models.AccessLogDecoder;
+import io.github.techouse.qskotlin.models.BatchDecodeStats;
+import io.github.techouse.qskotlin.models.DecodeOptions;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class AccessLogDecoderInteropTest {
+  private static final String LOG =
+      "10.0.0.1 - - \"GET /search?q=shoes&page=2 HTTP/1.1\" 200 512\n"
+          + "10.0.0.2 - - \"GET /health HTTP/1.1\" 200 2\n"
+          + "10.0.0.3 - - \"GET /p?a[b]=c HTTP/1.1\" 200 7\n";
+
+  @Test
+  void decode_accepts_a_BiConsumer_lambda(@TempDir Path dir) throws IOException {
+    Path path = Files.writeString(dir.resolve("access.log"), LOG);
+    AccessLogDecoder logs = new AccessLogDecoder(DecodeOptions.builder().build(), "?", " ");
+    Map<Long, Map<String, ?>> results = new ConcurrentSkipListMap<>();
+
+    BatchDecodeStats stats = logs.decode(path, (offset, query) -> results.put(offset, query));
+
+    assertEquals(2L, stats.getCount());
+    assertEquals(Map.of("q", "shoes", "page", "2"), results.get(0L));
+    assertEquals(Map.of("a", Map.of("b", "c")), results.get(101L));
+  }
+
+  @Test
+  void decodePathTables_accepts_a_BiConsumer_lambda(@TempDir Path dir) throws IOException {
+    Path path = Files.writeString(dir.resolve("access.log"), LOG);
+    AccessLogDecoder logs = new AccessLogDecoder(DecodeOptions.builder().build(), "?", " ");
+    Map<Long, List<Object>> rows = new ConcurrentSkipListMap<>();
+
+    logs.decodePathTables(
+        path, (offset, table) -> table.forEach((p, v) -> rows.put(offset, List.of(p, v))));
+
+    assertEquals(
+        Map.of(0L, List.of(List.of("page"), "2"), 101L, List.of(List.of("a", "b"), "c")), rows);
+  }
+}
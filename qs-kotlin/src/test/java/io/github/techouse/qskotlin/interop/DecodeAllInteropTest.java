@@ -0,0 +1,33 @@
+package io.github.techouse.qskotlin.interop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.techouse.qskotlin.QS;
+import io.github.techouse.qskotlin.models.BatchDecodeStats;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+final class DecodeAllInteropTest {
+  @Test
+  void streaming_decodeAll_accepts_a_BiConsumer_lambda() {
+    List<String> inputs = List.of("a=1", "b[c]=2", "");
+    List<Long> indexes = new ArrayList<>();
+    List<Map<String, ?>> results = new ArrayList<>();
+
+    BatchDecodeStats stats =
+        QS.decodeAll(
+            inputs,
+            null,
+            null,
+            (index, result) -> {
+              indexes.add(index);
+              results.add(result);
+            });
+
+    assertEquals(3L, stats.getCount());
+    assertEquals(List.of(0L, 1L, 2L), indexes);
+    assertEquals(List.of(Map.of("a", "1"), Map.of("b", Map.of("c", "2")), Map.of()), results);
+  }
+}
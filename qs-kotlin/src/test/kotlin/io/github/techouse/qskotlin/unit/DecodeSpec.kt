@@ -1,24 +1,34 @@
 package io.github.techouse.qskotlin.unit
 
 import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.decodeAll
 import io.github.techouse.qskotlin.encode
 import io.github.techouse.qskotlin.enums.DecodeKind
 import io.github.techouse.qskotlin.enums.Duplicates
 import io.github.techouse.qskotlin.fixtures.data.EmptyTestCases
+import io.github.techouse.qskotlin.fixtures.data.EndToEndTestCases
 import io.github.techouse.qskotlin.internal.Decoder as InternalDecoder
 import io.github.techouse.qskotlin.internal.Utils
+import io.github.techouse.qskotlin.models.CancellationToken
+import io.github.techouse.qskotlin.models.DeadlineExceededException
 import io.github.techouse.qskotlin.models.DecodeOptions
 import io.github.techouse.qskotlin.models.Decoder
 import io.github.techouse.qskotlin.models.Delimiter
 import io.github.techouse.qskotlin.models.RegexDelimiter
+import io.github.techouse.qskotlin.models.StringPool
 import io.kotest.assertions.throwables.shouldNotThrow
 import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.DescribeSpec
 import io.kotest.matchers.collections.shouldContainAll
+import io.kotest.matchers.ints.shouldBeLessThan
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.types.shouldBeSameInstanceAs
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.CancellationException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.time.Duration.Companion.seconds
 
 class DecodeSpec :
@@ -1228,6 +1238,222 @@ class DecodeSpec :
             }
         }
 
+        describe("memory budget") {
+            it("drops parameters beyond maxDecodedBytes") {
+                decode("a=1&b=2&c=3", DecodeOptions(maxDecodedBytes = 8)) shouldBe
+                    mapOf("a" to "1", "b" to "2")
+            }
+
+            it("throws when maxDecodedBytes is exceeded and throwOnLimitExceeded is set") {
+                val error =
+                    shouldThrow<IndexOutOfBoundsException> {
+                        decode(
+                            "a=1&b=2&c=3",
+                            DecodeOptions(maxDecodedBytes = 8, throwOnLimitExceeded = true),
+                        )
+                    }
+                error.message shouldBe "Decoded size limit exceeded. Only 8 bytes allowed."
+            }
+
+            it("drops nested parameters beyond maxNodes") {
+                decode("a[b]=c&d[e]=f", DecodeOptions(maxNodes = 5)) shouldBe
+                    mapOf("a" to mapOf("b" to "c"))
+            }
+
+            it("charges list padding before allocating it") {
+                val options = DecodeOptions(listLimit = 100_000, maxNodes = 100)
+
+                decode("a[5]=b", options) shouldBe mapOf("a" to listOf("b"))
+                decode("a[5000]=b", options) shouldBe emptyMap()
+                shouldThrow<IndexOutOfBoundsException> {
+                    decode("a[5000]=b", options.copy(throwOnLimitExceeded = true))
+                }
+            }
+
+            it("does not change results when the budget is large enough") {
+                val options = DecodeOptions(maxDecodedBytes = 1_000_000, maxNodes = 10_000)
+                EndToEndTestCases.forEach { testCase ->
+                    decode(testCase.encoded, options) shouldBe decode(testCase.encoded)
+                }
+            }
+
+            it("rejects non-positive budgets") {
+                shouldThrow<IllegalArgumentException> { DecodeOptions(maxDecodedBytes = 0) }
+                shouldThrow<IllegalArgumentException> { DecodeOptions(maxNodes = 0) }
+            }
+        }
+
+        describe("time budget and cancellation") {
+            val wide = (0 until 10_000).joinToString("&") { "a[$it][b]=$it" }
+            val unlimited = DecodeOptions(parameterLimit = Int.MAX_VALUE, listLimit = 20_000)
+
+            it("throws DeadlineExceededException when the time budget elapses") {
+                shouldThrow<DeadlineExceededException> {
+                    decode(wide, unlimited.copy(timeBudget = Duration.ofNanos(1)))
+                }
+            }
+
+            it("throws CancellationException when the token is cancelled") {
+                val token = CancellationToken().apply { cancel() }
+
+                shouldThrow<CancellationException> {
+                    decode("a[b]=c", DecodeOptions(cancellationToken = token))
+                }
+            }
+
+            it("does not change results when the budget is ample") {
+                val options =
+                    unlimited.copy(
+                        timeBudget = Duration.ofMinutes(1),
+                        cancellationToken = CancellationToken(),
+                    )
+
+                decode(wide, options) shouldBe decode(wide, unlimited)
+            }
+
+            it("rejects a negative time budget") {
+                shouldThrow<IllegalArgumentException> {
+                    DecodeOptions(timeBudget = Duration.ofMillis(-1))
+                }
+            }
+        }
+
+        describe("parallel decode") {
+            val inputs =
+                listOf(
+                    "a=1&a=2&b[]=3&b[]=4&c[1]=x&c[0]=y&d=e,f&&g&h[i][j]=k",
+                    "a[b]=c&a=d&a[e]=f&%5Bx%5D=y&z%20w=%E2%9C%93",
+                    (0 until 2_000).joinToString("&") { "k${it % 50}[${it % 7}][v]=$it&f$it=v" },
+                )
+            val options =
+                listOf(
+                    DecodeOptions(),
+                    DecodeOptions(comma = true, strictNullHandling = true),
+                    DecodeOptions(duplicates = Duplicates.FIRST, allowDots = true),
+                    DecodeOptions(duplicates = Duplicates.LAST, listLimit = 3),
+                    DecodeOptions(parseLists = false, strictMerge = false),
+                )
+
+            it("matches sequential decode exactly") {
+                for (input in inputs) {
+                    for (option in options) {
+                        val sequential = option.copy(parameterLimit = Int.MAX_VALUE)
+                        val parallel = sequential.copy(parallel = true, parallelThreshold = 1)
+
+                        decode(input, parallel) shouldBe decode(input, sequential)
+                    }
+                }
+            }
+
+            it("still throws list limit errors") {
+                shouldThrow<IndexOutOfBoundsException> {
+                    decode(
+                        "a=1,2,3",
+                        DecodeOptions(
+                            comma = true,
+                            listLimit = 2,
+                            throwOnLimitExceeded = true,
+                            parallel = true,
+                            parallelThreshold = 1,
+                        ),
+                    )
+                }
+            }
+
+            it("observes cancellation inside the parallel stage") {
+                val token = CancellationToken()
+                val calls = AtomicInteger()
+                val input = (0 until 20_000).joinToString("&") { "k$it=v" }
+
+                shouldThrow<CancellationException> {
+                    decode(
+                        input,
+                        DecodeOptions(
+                            decoder = { value, charset, _ ->
+                                if (calls.incrementAndGet() == 1) token.cancel()
+                                Utils.decode(value, charset)
+                            },
+                            parameterLimit = Int.MAX_VALUE,
+                            cancellationToken = token,
+                            parallel = true,
+                            parallelThreshold = 1,
+                        ),
+                    )
+                }
+                calls.get() shouldBeLessThan 40_000
+            }
+
+            it("rejects a non-positive threshold") {
+                shouldThrow<IllegalArgumentException> { DecodeOptions(parallelThreshold = 0) }
+            }
+        }
+
+        describe("decodeAll") {
+            val inputs: List<String?> =
+                (0 until 1_000).map {
+                    when (it % 5) {
+                        0 -> null
+                        1 -> ""
+                        2 -> "a[b][c]=$it&a[b][d]=x&list[]=1&list[]=2"
+                        3 -> "filter[status]=open&page=$it&sort=asc"
+                        else -> "a.b=c&id=$it&e=%E2%9C%93"
+                    }
+                }
+            val options = DecodeOptions(allowDots = true)
+
+            it("matches decode for every input, in order") {
+                decodeAll(inputs, options) shouldBe inputs.map { decode(it, options) }
+            }
+
+            it("accepts a Stream and a custom executor") {
+                val executor = Executors.newFixedThreadPool(2)
+                try {
+                    var closed = false
+                    val stream = inputs.stream().onClose { closed = true }
+                    decodeAll(stream, options, executor) shouldBe
+                        inputs.map { decode(it, options) }
+                    closed shouldBe false
+                } finally {
+                    executor.shutdown()
+                }
+            }
+
+            it("streams results to a consumer in order and reports stats") {
+                val indexes = mutableListOf<Long>()
+                val stats =
+                    decodeAll(inputs, options, null) { index, result ->
+                        indexes += index
+                        result shouldBe decode(inputs[index.toInt()], options)
+                    }
+
+                indexes shouldBe (0L until 1_000L).toList()
+                stats.count shouldBe 1_000L
+                (stats.throughputPerSecond > 0.0) shouldBe true
+            }
+
+            it("shares a configured string pool across the batch") {
+                val pool = StringPool()
+
+                decodeAll(inputs, DecodeOptions(stringPool = pool))
+
+                (pool.hitCount > 0) shouldBe true
+            }
+
+            it("propagates decode errors") {
+                shouldThrow<IndexOutOfBoundsException> {
+                    decodeAll(
+                        inputs,
+                        DecodeOptions(parameterLimit = 2, throwOnLimitExceeded = true),
+                    )
+                }
+            }
+
+            it("returns an empty list for no inputs") {
+                decodeAll(emptyList()) shouldBe emptyList()
+                decodeAll(emptyList(), null, null) { _, _ -> }.count shouldBe 0L
+            }
+        }
+
         describe("list limit tests") {
             it("does not throw error when list is within limit") {
                 decode(
@@ -6,6 +6,7 @@ import io.github.techouse.qskotlin.enums.ListFormat
 import io.github.techouse.qskotlin.enums.Sentinel
 import io.github.techouse.qskotlin.fixtures.DummyEnum
 import io.github.techouse.qskotlin.fixtures.data.EmptyTestCases
+import io.github.techouse.qskotlin.internal.PrimitiveArrays
 import io.github.techouse.qskotlin.internal.Utils
 import io.github.techouse.qskotlin.models.*
 import io.kotest.assertions.throwables.shouldNotThrow
@@ -19,11 +20,14 @@ import io.kotest.matchers.string.shouldMatch
 import java.nio.ByteBuffer
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.time.Duration
 import java.time.Instant
 import java.time.LocalDateTime
 import java.time.ZoneId
 import java.time.ZoneOffset
 import java.util.*
+import java.util.concurrent.CancellationException
+import java.util.stream.IntStream
 
 class EncodeSpec :
     DescribeSpec({
@@ -1990,6 +1994,545 @@ class EncodeSpec :
             }
         }
 
+        describe("time budget and cancellation") {
+            val wide = (0 until 10_000).associate { "k$it" to mapOf("a" to listOf(it, it + 1)) }
+
+            it("throws DeadlineExceededException when the time budget elapses") {
+                shouldThrow<DeadlineExceededException> {
+                    encode(wide, EncodeOptions(timeBudget = Duration.ofNanos(1)))
+                }
+            }
+
+            it("throws CancellationException when the token is cancelled") {
+                val token = CancellationToken().apply { cancel() }
+
+                shouldThrow<CancellationException> {
+                    encode(
+                        mapOf("a" to mapOf("b" to "c")),
+                        EncodeOptions(cancellationToken = token),
+                    )
+                }
+            }
+
+            it("does not change output when the budget is ample") {
+                val options =
+                    EncodeOptions(
+                        timeBudget = Duration.ofMinutes(1),
+                        cancellationToken = CancellationToken(),
+                    )
+
+                encode(wide, options) shouldBe encode(wide)
+            }
+
+            it("rejects a negative time budget") {
+                shouldThrow<IllegalArgumentException> {
+                    EncodeOptions(timeBudget = Duration.ofMillis(-1))
+                }
+            }
+        }
+
+        describe("parallel encode") {
+            val wide: Map<String, Any?> =
+                (0 until 2_000).associate {
+                    "k${(it * 7919) % 2_000}" to
+                        when (it % 4) {
+                            0 -> mapOf("a" to listOf(it, "x y"), "b" to null)
+                            1 -> listOf(mapOf("c" to it), "d")
+                            2 -> null
+                            else -> "v$it"
+                        }
+                }
+            val list = (0 until 2_000).map { if (it % 3 == 0) null else mapOf("i" to it) }
+            val options =
+                listOf(
+                    EncodeOptions(),
+                    EncodeOptions(sort = { a, b -> a.toString().compareTo(b.toString()) }),
+                    EncodeOptions(filter = IterableFilter((0 until 2_000 step 3).map { "k$it" })),
+                    EncodeOptions(
+                        filter = FunctionFilter { prefix, value -> if (prefix == "") value else 1 }
+                    ),
+                    EncodeOptions(listFormat = ListFormat.COMMA, skipNulls = true),
+                    EncodeOptions(listFormat = ListFormat.BRACKETS, strictNullHandling = true),
+                    EncodeOptions(allowDots = true, encodeValuesOnly = true, addQueryPrefix = true),
+                )
+
+            it("matches sequential encode exactly") {
+                for (data in listOf(wide, list)) {
+                    for (option in options) {
+                        val parallel = option.copy(parallel = true, parallelThreshold = 1)
+
+                        encode(data, parallel) shouldBe encode(data, option)
+                    }
+                }
+            }
+
+            it("keeps enforcing the time budget") {
+                shouldThrow<DeadlineExceededException> {
+                    encode(
+                        wide,
+                        EncodeOptions(
+                            timeBudget = Duration.ofNanos(1),
+                            parallel = true,
+                            parallelThreshold = 1,
+                        ),
+                    )
+                }
+            }
+
+            it("rejects a non-positive threshold") {
+                shouldThrow<IllegalArgumentException> { EncodeOptions(parallelThreshold = 0) }
+            }
+        }
+
+        describe("flat map fast path") {
+            val flat: Map<String, Any?> =
+                linkedMapOf(
+                    "a b" to "c&d",
+                    "e.f" to 1.5,
+                    "n" to null,
+                    "empty" to "",
+                    "u" to Undefined(),
+                    "t" to true,
+                    "date" to LocalDateTime.of(2024, 1, 2, 3, 4, 5),
+                    "instant" to Instant.ofEpochSecond(0),
+                    "bytes" to "é".toByteArray(),
+                    "enum" to DummyEnum.LOREM,
+                    "ü" to "✓",
+                )
+            // An identity filter forces the general traversal without changing the result.
+            val general = FunctionFilter { _, value -> value }
+            val options =
+                listOf(
+                    EncodeOptions(),
+                    EncodeOptions(encode = false),
+                    EncodeOptions(encodeValuesOnly = true),
+                    EncodeOptions(skipNulls = true),
+                    EncodeOptions(strictNullHandling = true),
+                    EncodeOptions(strictNullHandling = true, encodeValuesOnly = true),
+                    EncodeOptions(addQueryPrefix = true, charsetSentinel = true),
+                    EncodeOptions(format = Format.RFC1738, charset = StandardCharsets.ISO_8859_1),
+                    EncodeOptions(allowDots = true, encodeDotInKeys = true),
+                    EncodeOptions(delimiter = Delimiter.SEMICOLON, dateSerializer = { "d" }),
+                    EncodeOptions(encoder = { value, _, _ -> "<$value>" }),
+                )
+
+            it("matches the general traversal") {
+                for (option in options) {
+                    encode(flat, option) shouldBe encode(flat, option.copy(filter = general))
+                }
+            }
+
+            it("falls back for nested values and non-String keys") {
+                val nested = linkedMapOf<String, Any?>("a" to "b", "c" to listOf("d"))
+
+                encode(nested) shouldBe "a=b&c%5B0%5D=d"
+                encode(linkedMapOf(1 to "a", "1" to "b")) shouldBe "1=b"
+            }
+
+            it("keeps the prefix when every entry is skipped") {
+                val skipping = EncodeOptions(skipNulls = true, addQueryPrefix = true)
+                val data = mapOf("a" to null)
+
+                encode(data, skipping) shouldBe encode(data, skipping.copy(filter = general))
+            }
+        }
+
+        describe("encoded key prefix cache") {
+            val data =
+                mapOf(
+                    "rows ü" to
+                        (0 until 1_500).map {
+                            if (it % 2 == 0) mapOf("n a" to it, "t" to listOf("x", "y")) else "v$it"
+                        },
+                    "m" to mapOf("k.1" to mapOf("(p)" to "q", "😀" to null)),
+                )
+            // A custom encoder that matches the default disables the prefix cache.
+            val plain: ValueEncoder = { value, charset, format ->
+                Utils.encode(value, charset, format)
+            }
+
+            it("matches encoding every full key path") {
+                for (
+                    option in
+                        listOf(
+                            EncodeOptions(),
+                            EncodeOptions(strictNullHandling = true),
+                            EncodeOptions(format = Format.RFC1738),
+                            EncodeOptions(charset = StandardCharsets.ISO_8859_1),
+                            EncodeOptions(allowDots = true, encodeDotInKeys = true),
+                            EncodeOptions(listFormat = ListFormat.BRACKETS),
+                        )
+                ) {
+                    encode(data, option) shouldBe encode(data, option.copy(encoder = plain))
+                }
+            }
+        }
+
+        describe("assumeAcyclic") {
+            val data: Map<String, Any?> =
+                mapOf(
+                    "a" to mapOf("b" to mapOf("c" to "d")),
+                    "e" to listOf(1, mapOf("f" to arrayOf("g", null)), emptyList<Any?>()),
+                    "h" to mapOf("i" to "j", "k" to listOf("l m")),
+                )
+            val options =
+                listOf(
+                    EncodeOptions(),
+                    EncodeOptions(listFormat = ListFormat.COMMA, commaRoundTrip = true),
+                    EncodeOptions(allowDots = true, allowEmptyLists = true, skipNulls = true),
+                    EncodeOptions(listFormat = ListFormat.BRACKETS, strictNullHandling = true),
+                )
+
+            it("produces the same output as the default mode") {
+                for (option in options) {
+                    encode(data, option.copy(assumeAcyclic = true)) shouldBe encode(data, option)
+                }
+            }
+
+            it("reports a cycle as exceeding the depth limit") {
+                val cyclic = mutableMapOf<String, Any?>()
+                cyclic["self"] = cyclic
+                val wide = mutableMapOf<String, Any?>("x" to 1)
+                wide["self"] = wide
+
+                for (input in listOf(cyclic, wide)) {
+                    val error =
+                        shouldThrow<IndexOutOfBoundsException> {
+                            encode(
+                                mapOf("a" to input),
+                                EncodeOptions(assumeAcyclic = true, maxDepth = 50),
+                            )
+                        }
+                    error.message shouldBe
+                        "Maximum encoding depth of 50 exceeded. The input may be cyclic."
+                }
+            }
+
+            it("allows nesting up to maxDepth") {
+                var nested: Any? = "x"
+                repeat(3) { nested = listOf(nested) }
+                val limited = EncodeOptions(assumeAcyclic = true, maxDepth = 3, encode = false)
+
+                encode(mapOf("a" to nested), limited) shouldBe "a[0][0][0]=x"
+                shouldThrow<IndexOutOfBoundsException> {
+                    encode(mapOf("a" to listOf(nested)), limited)
+                }
+                val chain = mapOf("b" to mapOf("c" to mapOf("d" to 1)))
+                encode(mapOf("a" to chain), limited) shouldBe "a[b][c][d]=1"
+                shouldThrow<IndexOutOfBoundsException> {
+                    encode(mapOf("a" to mapOf("z" to chain)), limited)
+                }
+            }
+
+            it("rejects a non-positive maxDepth") {
+                shouldThrow<IllegalArgumentException> { EncodeOptions(maxDepth = 0) }
+            }
+        }
+
+        describe("PathFilter") {
+            val data =
+                mapOf(
+                    "a" to mapOf("b" to "c", "password" to "x"),
+                    "d" to listOf("e", mapOf("password" to "y", "f" to null)),
+                    "g.h" to "i",
+                )
+
+            it("matches a FunctionFilter that reads the same path") {
+                val drop = { path: String -> path.endsWith("[password]") || path == "a[b]" }
+                for (
+                    option in
+                        listOf(
+                            EncodeOptions(),
+                            EncodeOptions(allowDots = true, encodeDotInKeys = true),
+                            EncodeOptions(listFormat = ListFormat.BRACKETS, encode = false),
+                        )
+                ) {
+                    val byPath = PathFilter { path, value ->
+                        if (path.endsWith("[password]") || path.contentEquals("a[b]")) null
+                        else value
+                    }
+                    val byString = FunctionFilter { path, value -> if (drop(path)) null else value }
+
+                    encode(data, option.copy(filter = byPath)) shouldBe
+                        encode(data, option.copy(filter = byString))
+                }
+            }
+
+            it("passes the same paths a FunctionFilter sees") {
+                val viaPath = mutableListOf<String>()
+                val viaString = mutableListOf<String>()
+                val pathFilter = PathFilter { path, value ->
+                    viaPath += path.toString()
+                    value
+                }
+                val stringFilter = FunctionFilter { path, value ->
+                    viaString += path
+                    value
+                }
+
+                encode(data, EncodeOptions(filter = pathFilter))
+                encode(data, EncodeOptions(filter = stringFilter))
+
+                viaPath shouldBe viaString
+            }
+
+            it("exposes the last segment and prefix queries") {
+                val seen = mutableListOf<String>()
+                val filter = PathFilter { path, value ->
+                    if (path.startsWith("d")) seen += path.lastSegment
+                    value
+                }
+
+                encode(data, EncodeOptions(filter = filter))
+
+                seen shouldBe listOf("d", "[0]", "[1]", "[password]", "[f]")
+            }
+
+            it("drops entries mapped to null when skipNulls is set") {
+                val filter = PathFilter { path, value ->
+                    if (path.endsWith("[password]")) null else value
+                }
+
+                encode(
+                    mapOf("user" to mapOf("name" to "x", "password" to "y")),
+                    EncodeOptions(skipNulls = true, filter = filter),
+                ) shouldBe "user%5Bname%5D=x"
+            }
+
+            it("replaces the root map when the root call returns a Map") {
+                val filter = PathFilter { path, value ->
+                    if (path.isEmpty()) mapOf("z" to 1) else value
+                }
+
+                encode(data, EncodeOptions(filter = filter)) shouldBe "z=1"
+            }
+        }
+
+        describe("AllowlistFilter") {
+            val data =
+                mapOf(
+                    "user" to
+                        mapOf("name" to "n", "email" to "e", "address" to mapOf("city" to "c")),
+                    "items" to listOf(mapOf("id" to 1, "title" to "t1"), mapOf("id" to 2)),
+                    "meta" to mapOf("a" to mapOf("b" to "c"), "d" to listOf("e")),
+                    "secret" to "s",
+                )
+            val raw = EncodeOptions(encode = false)
+
+            fun select(vararg patterns: String, options: EncodeOptions = raw): String =
+                encode(data, options.copy(filter = AllowlistFilter(*patterns)))
+
+            it("selects exact paths, wildcards and whole subtrees") {
+                select("user.name", "items[*].id", "meta.**") shouldBe
+                    "user[name]=n&items[0][id]=1&items[1][id]=2&meta[a][b]=c&meta[d][0]=e"
+            }
+
+            it("writes exact keys in pattern order unless sorted") {
+                select("user.email", "user.name") shouldBe "user[email]=e&user[name]=n"
+                val sorted = raw.copy(sort = { a, b -> a.toString().compareTo(b.toString()) })
+                select("user.name", "secret", "user.email", options = sorted) shouldBe
+                    "secret=s&user[email]=e&user[name]=n"
+            }
+
+            it("combines a wildcard with exact siblings") {
+                select("items[*].id", "items[0].title") shouldBe
+                    "items[0][title]=t1&items[0][id]=1&items[1][id]=2"
+            }
+
+            it("leaves out missing paths and scalars above the pattern end") {
+                select("nope.x", "items[5].id", "secret.x", "user.name.first") shouldBe ""
+                select("user.address", "user.nope") shouldBe "user[address][city]=c"
+            }
+
+            it("matches the path syntax independent of the output notation") {
+                select("user.address.city", options = raw.copy(allowDots = true)) shouldBe
+                    "user.address.city=c"
+                select("meta.d", options = raw.copy(listFormat = ListFormat.COMMA)) shouldBe
+                    "meta[d]=e"
+                encode(listOf("a", "b", "c"), raw.copy(filter = AllowlistFilter("1"))) shouldBe
+                    "1=b"
+            }
+
+            it("does not visit unselected subtrees") {
+                val watched =
+                    object : kotlin.collections.AbstractMap<String, Any?>() {
+                        override val entries: Set<Map.Entry<String, Any?>>
+                            get() = error("entries must not be walked")
+
+                        override fun containsKey(key: String): Boolean = key == "keep"
+
+                        override fun get(key: String): Any? = if (key == "keep") "k" else null
+                    }
+                val big = mapOf("huge" to watched, "other" to (0 until 10_000).toList())
+
+                encode(big, raw.copy(filter = AllowlistFilter("huge.keep"))) shouldBe
+                    "huge[keep]=k"
+            }
+
+            it("selects everything with a root '**'") {
+                val data = mapOf("a" to 1, "b" to mapOf("c" to 2))
+
+                encode(data, raw.copy(filter = AllowlistFilter("**"))) shouldBe "a=1&b[c]=2"
+                encode(data, raw.copy(filter = AllowlistFilter("b.c", "**"))) shouldBe
+                    "a=1&b[c]=2"
+                encode(data, raw.copy(filter = AllowlistFilter("**", "nope"))) shouldBe
+                    "a=1&b[c]=2"
+                encode(listOf("x", "y"), raw.copy(filter = AllowlistFilter("**"))) shouldBe
+                    "0=x&1=y"
+            }
+
+            it("matches non-String map keys by their text") {
+                val nested = mapOf("m" to mapOf(1 to "x"))
+                encode(nested, raw.copy(filter = AllowlistFilter("m.1"))) shouldBe "m[1]=x"
+                encode(mapOf(1 to "x", 2 to "y"), raw.copy(filter = AllowlistFilter("2"))) shouldBe
+                    "2=y"
+                encode(
+                    mapOf("m" to mapOf(1 to "int", "1" to "string", true to "t")),
+                    raw.copy(filter = AllowlistFilter("m.1", "m.true")),
+                ) shouldBe "m[1]=string&m[true]=t"
+            }
+        }
+
+        describe("lazy sequences") {
+            val options =
+                listOf(
+                    EncodeOptions(),
+                    EncodeOptions(listFormat = ListFormat.BRACKETS, encode = false),
+                    EncodeOptions(listFormat = ListFormat.REPEAT, skipNulls = true),
+                    EncodeOptions(listFormat = ListFormat.COMMA, commaRoundTrip = true),
+                    EncodeOptions(allowEmptyLists = true, strictNullHandling = true),
+                    EncodeOptions(sort = { a, b -> b.toString().compareTo(a.toString()) }),
+                    EncodeOptions(filter = IterableFilter(listOf("a", "e", 1))),
+                    EncodeOptions(filter = AllowlistFilter("a[0]", "e[*]")),
+                )
+            val items = listOf("x y", null, mapOf("b" to listOf(1, 2)))
+            val views =
+                listOf<(List<Any?>) -> Any>(
+                    { it.asSequence() },
+                    { it.stream() },
+                    { it.iterator() },
+                )
+
+            it("encodes Sequence, Stream and Iterator values like lists") {
+                for (option in options) {
+                    val expected =
+                        encode(mapOf("a" to items, "e" to emptyList<Any?>(), "s" to "t"), option)
+
+                    for (view in views) {
+                        val data = mapOf("a" to view(items), "e" to view(emptyList()), "s" to "t")
+                        encode(data, option) shouldBe expected
+                    }
+                }
+            }
+
+            it("encodes a root sequence or stream like a root list") {
+                encode(sequenceOf("a", "b")) shouldBe encode(listOf("a", "b"))
+                encode(IntStream.range(0, 3)) shouldBe "0=0&1=1&2=2"
+                encode(mapOf("n" to IntStream.range(0, 2)), EncodeOptions(encode = false)) shouldBe
+                    "n[0]=0&n[1]=1"
+            }
+
+            it("pulls each element only when it is encoded") {
+                val events = mutableListOf<String>()
+                val source =
+                    object : Iterator<Int> {
+                        var next = 0
+
+                        override fun hasNext(): Boolean = next < 3
+
+                        override fun next(): Int = next++.also { events += "pull $it" }
+                    }
+                val filter = FunctionFilter { path, value ->
+                    if (path.startsWith("a[")) events += "visit $path"
+                    value
+                }
+
+                val options = EncodeOptions(filter = filter, encode = false)
+
+                encode(mapOf("a" to source), options) shouldBe "a[0]=0&a[1]=1&a[2]=2"
+                events shouldBe
+                    listOf("pull 0", "visit a[0]", "pull 1", "visit a[1]", "pull 2", "visit a[2]")
+            }
+
+            it("consumes a single-use sequence once") {
+                val once = sequenceOf(1, 2).constrainOnce()
+
+                encode(mapOf("a" to mapOf("b" to once)), EncodeOptions(encode = false)) shouldBe
+                    "a[b][0]=1&a[b][1]=2"
+            }
+        }
+
+        describe("primitive arrays") {
+            val arrays: List<Any> =
+                listOf(
+                    intArrayOf(1, -2, 3_000),
+                    longArrayOf(Long.MAX_VALUE, 0),
+                    doubleArrayOf(1.5, -0.0, Double.NaN),
+                    floatArrayOf(2.5f),
+                    shortArrayOf(7, 8),
+                    booleanArrayOf(true, false),
+                    charArrayOf('a', '&', ' ', 'ü'),
+                    intArrayOf(9),
+                    IntArray(0),
+                )
+            val options =
+                ListFormat.entries.flatMap { format ->
+                    listOf(
+                        EncodeOptions(listFormat = format),
+                        EncodeOptions(listFormat = format, encode = false),
+                        EncodeOptions(listFormat = format, encodeValuesOnly = true),
+                        EncodeOptions(listFormat = format, commaRoundTrip = true),
+                        EncodeOptions(listFormat = format, allowEmptyLists = true),
+                        EncodeOptions(listFormat = format, format = Format.RFC1738),
+                        EncodeOptions(
+                            listFormat = format,
+                            allowDots = true,
+                            encodeDotInKeys = true,
+                        ),
+                        EncodeOptions(
+                            listFormat = format,
+                            filter = FunctionFilter { _, value -> value },
+                        ),
+                        EncodeOptions(
+                            listFormat = format,
+                            encoder = { value, charset, _ -> "<$value:${charset?.name()}>" },
+                        ),
+                    )
+                }
+
+            it("encodes every primitive array like the equivalent List") {
+                for (option in options) {
+                    for (array in arrays) {
+                        val boxed = PrimitiveArrays.boxed(array)
+
+                        encode(mapOf("a.b" to array, "c" to "d"), option) shouldBe
+                            encode(mapOf("a.b" to boxed, "c" to "d"), option)
+                        // The comma format joins nested lists with toString(); skip that case.
+                        if (option.getListFormat != ListFormat.COMMA) {
+                            encode(mapOf("m" to listOf(array)), option) shouldBe
+                                encode(mapOf("m" to listOf(boxed)), option)
+                        }
+                    }
+                }
+            }
+
+            it("encodes a root primitive array like a root list") {
+                encode(intArrayOf(4, 5)) shouldBe encode(listOf(4, 5))
+            }
+
+            it("joins primitive arrays under the comma format") {
+                val comma = EncodeOptions(listFormat = ListFormat.COMMA, encode = false)
+
+                encode(mapOf("ids" to intArrayOf(1, 2, 3)), comma) shouldBe "ids=1,2,3"
+                encode(mapOf("ids" to longArrayOf(7)), comma.copy(commaRoundTrip = true)) shouldBe
+                    "ids[]=7"
+            }
+
+            it("keeps ByteArray as a binary value") {
+                encode(mapOf("b" to "hi".toByteArray())) shouldBe "b=hi"
+            }
+        }
+
         describe("Encoder additional coverage") {
             it("strictNullHandling with custom encoder encodes prefix via encoder branch") {
                 val calls = mutableListOf<String>()
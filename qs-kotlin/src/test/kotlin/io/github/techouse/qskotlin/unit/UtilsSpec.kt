@@ -14,7 +14,9 @@ import io.kotest.matchers.types.shouldBeSameInstanceAs
 import io.kotest.matchers.types.shouldNotBeSameInstanceAs
 import java.net.URI
 import java.nio.ByteBuffer
+import java.nio.charset.CodingErrorAction
 import java.nio.charset.StandardCharsets
+import kotlin.random.Random
 
 class UtilsSpec :
     FunSpec({
@@ -212,6 +214,48 @@ class UtilsSpec :
                 val readOnly = ByteBuffer.wrap("hi".toByteArray()).asReadOnlyBuffer()
                 Utils.encode(readOnly) shouldBe "hi"
             }
+
+            test("encodes bytes like their replacement-decoded UTF-8 string") {
+                val interesting =
+                    intArrayOf(0x00, 0x20, 0x28, 0x41, 0x7E, 0x7F, 0x80, 0x8F, 0x90, 0x9F, 0xA0) +
+                        intArrayOf(0xBF, 0xC0, 0xC2, 0xDF, 0xE0, 0xED, 0xEF, 0xF0, 0xF4, 0xF5, 0xFF)
+                val random = Random(46)
+
+                repeat(5_000) {
+                    val bytes =
+                        ByteArray(random.nextInt(12)) {
+                            val b =
+                                if (random.nextBoolean()) interesting.random(random)
+                                else random.nextInt(256)
+                            b.toByte()
+                        }
+                    val text =
+                        StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                            .decode(ByteBuffer.wrap(bytes))
+                            .toString()
+
+                    for (format in Format.entries) {
+                        Utils.encode(bytes, format = format) shouldBe
+                            Utils.encode(text, format = format)
+                    }
+                }
+            }
+
+            test("encodes the remaining bytes of a sliced buffer without moving it") {
+                val backing = "xx✓ yy".toByteArray(StandardCharsets.UTF_8)
+                val buffer = ByteBuffer.wrap(backing, 1, backing.size - 2).slice()
+                buffer.position(1)
+
+                Utils.encode(buffer) shouldBe "%E2%9C%93%20y"
+                buffer.position() shouldBe 1
+
+                val direct = ByteBuffer.allocateDirect(8).put(byteArrayOf(0x61, 0xC3.toByte()))
+                direct.flip()
+                Utils.encode(direct) shouldBe "a%EF%BF%BD"
+                direct.position() shouldBe 0
+            }
         }
 
         context("Utils.decode") {
@@ -0,0 +1,70 @@
+package io.github.techouse.qskotlin.unit.internal
+
+import io.github.techouse.qskotlin.internal.ByteScanner
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class ByteScannerInternalSpec :
+    DescribeSpec({
+        fun buffer(bytes: ByteArray): ByteBuffer =
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+
+        fun buffer(text: String): ByteBuffer = buffer(text.toByteArray())
+
+        describe("indexOf byte") {
+            it("matches a bytewise scan at every position and range") {
+                val text = "abc&def=ghi%20jkl+mno[pq].rs&tuv=wxyz0123456789&"
+                val buf = buffer(text)
+                for (target in "&=%+[.z9".map { it.code.toByte() }) {
+                    for (from in text.indices) {
+                        for (to in from..text.length) {
+                            val expected =
+                                (from until to).firstOrNull { text[it].code.toByte() == target }
+                            ByteScanner.indexOf(buf, target, from, to) shouldBe (expected ?: -1)
+                        }
+                    }
+                }
+            }
+
+            it("finds bytes with the high bit set") {
+                val bytes = ByteArray(20) { 'a'.code.toByte() }.also { it[13] = 0x80.toByte() }
+                ByteScanner.indexOf(buffer(bytes), 0x80.toByte(), 0, 20) shouldBe 13
+            }
+
+            it("reports the first of adjacent matches within a word") {
+                ByteScanner.indexOf(buffer("xx&&&&xxxxxx"), '&'.code.toByte(), 0, 12) shouldBe 2
+                ByteScanner.indexOf(buffer("\u0001\u0000aaaaaaaa"), 0, 0, 10) shouldBe 1
+            }
+
+            it("requires a little-endian buffer") {
+                shouldThrow<IllegalArgumentException> {
+                    ByteScanner.indexOf(ByteBuffer.wrap(ByteArray(16)), 0, 0, 16)
+                }
+            }
+        }
+
+        describe("indexOf needle") {
+            it("finds multi-byte needles, including across words") {
+                val buf = buffer("GET /a?b HTTP/1.1 /search?q=1 HTTP")
+                ByteScanner.indexOf(buf, "/search?".toByteArray(), 0, 34) shouldBe 18
+                ByteScanner.indexOf(buf, " HTTP".toByteArray(), 26, 34) shouldBe 29
+                ByteScanner.indexOf(buf, "nope".toByteArray(), 0, 34) shouldBe -1
+                ByteScanner.indexOf(buf, "HTTP".toByteArray(), 0, 12) shouldBe -1
+            }
+        }
+
+        describe("isAscii") {
+            it("detects a non-ASCII byte anywhere in the range") {
+                val text = "plain-ascii-text-over-several-words"
+                ByteScanner.isAscii(buffer(text), 0, text.length) shouldBe true
+                for (i in text.indices) {
+                    val bytes = text.toByteArray().also { it[i] = 0xC3.toByte() }
+                    ByteScanner.isAscii(buffer(bytes), 0, bytes.size) shouldBe false
+                    ByteScanner.isAscii(buffer(bytes), i + 1, bytes.size) shouldBe true
+                }
+            }
+        }
+    })
@@ -263,6 +263,23 @@ class EncoderInternalSpec :
                 result shouldBe listOf("items[][0]=solo")
             }
 
+            it("reads one element ahead for commaRoundTrip with pulled sequences") {
+                fun encodeItems(data: Any) =
+                    Encoder.encode(
+                        data = data,
+                        undefined = false,
+                        prefix = "items",
+                        generateArrayPrefix = ListFormat.INDICES.generator,
+                        commaRoundTrip = true,
+                        encoder = { value, _, _ -> value?.toString() ?: "" },
+                        formatter = { v -> v },
+                    )
+
+                encodeItems(sequenceOf("solo")) shouldBe listOf("items[][0]=solo")
+                encodeItems(listOf("a", "b").iterator()) shouldBe
+                    listOf("items[0]=a", "items[1]=b")
+            }
+
             it("stringifies temporal comma lists when no serializer supplied") {
                 val instant = Instant.parse("2020-01-01T00:00:00Z")
                 val date = LocalDateTime.parse("2020-01-01T00:00:00")
@@ -610,6 +627,50 @@ class EncoderInternalSpec :
 
                 result shouldBe listOf("E(root[a])=E(v)")
             }
+
+            it("reuses frames across siblings of different container kinds") {
+                val data =
+                    linkedMapOf(
+                        "m" to linkedMapOf("x" to listOf("1", "2"), "y" to null),
+                        "s" to linkedSetOf("a", "b"),
+                        "r" to listOf(mapOf("z" to "3"), "4"),
+                        "e" to emptyMap<String, Any?>(),
+                        "t" to "5",
+                    )
+
+                val result =
+                    Encoder.encode(
+                        data = data,
+                        undefined = false,
+                        prefix = "p",
+                        formatter = { value -> value },
+                    )
+
+                result shouldBe
+                    listOf(
+                        "p[m][x][0]=1",
+                        "p[m][x][1]=2",
+                        "p[m][y]=",
+                        "p[s][0]=a",
+                        "p[s][1]=b",
+                        "p[r][0][z]=3",
+                        "p[r][1]=4",
+                        "p[t]=5",
+                    )
+            }
+
+            it("treats a map key carrying a value entry as the value for unsorted maps") {
+                val key = mapOf("value" to "v")
+                val result =
+                    Encoder.encode(
+                        data = mapOf(key to "ignored", "b" to "c"),
+                        undefined = false,
+                        prefix = "p",
+                        formatter = { value -> value },
+                    )
+
+                result shouldBe listOf("p[{value=v}]=v", "p[b]=c")
+            }
         }
     })
 
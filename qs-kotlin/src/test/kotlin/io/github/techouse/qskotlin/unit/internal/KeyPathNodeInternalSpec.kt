@@ -1,9 +1,13 @@
 package io.github.techouse.qskotlin.unit.internal
 
+import io.github.techouse.qskotlin.enums.Format
 import io.github.techouse.qskotlin.internal.KeyPathNode
+import io.github.techouse.qskotlin.internal.Utils
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.DescribeSpec
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.types.shouldBeSameInstanceAs
+import java.nio.charset.StandardCharsets
 
 class KeyPathNodeInternalSpec :
     DescribeSpec({
@@ -36,5 +40,47 @@ class KeyPathNodeInternalSpec :
 
                 encoded.materialize() shouldBe "a%2Eb[c]"
             }
+
+            it("encodes a path segment by segment like encoding it whole") {
+                for (charset in listOf(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1)) {
+                    for (format in Format.entries) {
+                        // The memo assumes one charset and format, so build a fresh tree per pair.
+                        val parent =
+                            KeyPathNode.fromMaterialized("a b").append("[ü]").append("[(x)]")
+                        val leaves =
+                            listOf(parent.append("[😀]"), parent.append("[c&d]"), parent.append("."))
+
+                        for (leaf in leaves + parent.append("[e]").append("[f]")) {
+                            leaf.encoded(charset, format) shouldBe
+                                Utils.encode(leaf.materialize(), charset, format)
+                        }
+                    }
+                }
+            }
+
+            it("uses a pre-encoded segment when one is supplied") {
+                val node = KeyPathNode.fromMaterialized("a").append("[7]", "%5B7%5D")
+
+                node.materialize() shouldBe "a[7]"
+                node.encoded(StandardCharsets.UTF_8, Format.RFC3986) shouldBe "a%5B7%5D"
+            }
+            it("answers character and region queries without materializing") {
+                val node =
+                    KeyPathNode.fromMaterialized("ab").append("[c]").append("").append("[de]")
+                val text = "ab[c][de]"
+
+                node.length shouldBe text.length
+                node.lastSegment shouldBe "[de]"
+                for (i in text.indices) node.charAt(i) shouldBe text[i]
+                for (start in 0..text.length) {
+                    for (end in start..text.length) {
+                        node.regionMatches(start, text.substring(start, end)) shouldBe true
+                    }
+                }
+                node.regionMatches(0, "ab[d]") shouldBe false
+                node.regionMatches(7, "de]x") shouldBe false
+                node.regionMatches(-1, "a") shouldBe false
+                shouldThrow<IndexOutOfBoundsException> { node.charAt(text.length) }
+            }
         }
     })
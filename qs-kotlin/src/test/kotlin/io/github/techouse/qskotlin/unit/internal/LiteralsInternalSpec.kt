@@ -0,0 +1,96 @@
+package io.github.techouse.qskotlin.unit.internal
+
+import io.github.techouse.qskotlin.encode
+import io.github.techouse.qskotlin.enums.Format
+import io.github.techouse.qskotlin.fixtures.DummyEnum
+import io.github.techouse.qskotlin.internal.Literals
+import io.github.techouse.qskotlin.internal.Utils
+import io.github.techouse.qskotlin.models.EncodeOptions
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import java.nio.charset.StandardCharsets
+
+class LiteralsInternalSpec :
+    DescribeSpec({
+        describe("Literals") {
+            val literals: List<Any> =
+                listOf(
+                    true,
+                    false,
+                    0,
+                    7,
+                    1_023,
+                    1_024,
+                    -1,
+                    Int.MIN_VALUE,
+                    Long.MAX_VALUE,
+                    3.toShort(),
+                    (-4).toByte(),
+                    DummyEnum.IPSUM,
+                    Spaced.PLAIN,
+                    Spaced.WITH_BODY,
+                )
+
+            it("matches Utils.encode under every charset and format") {
+                for (value in literals) {
+                    for (charset in listOf(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1)) {
+                        for (format in Format.entries) {
+                            Literals.encoded(value) shouldBe Utils.encode(value, charset, format)
+                        }
+                    }
+                }
+            }
+
+            it("shares small integer strings") {
+                Literals.encoded(42) shouldBeSameInstanceAs Literals.encoded(42L)
+            }
+
+            it("leaves enum constants that need escaping and other values to the encoder") {
+                Literals.encoded(Spaced.NEEDS_ESCAPING) shouldBe null
+                Literals.encoded(Spaced.TILDE) shouldBe null
+                Literals.encoded("a") shouldBe null
+                Literals.encoded(1.5) shouldBe null
+                Literals.encoded(null) shouldBe null
+            }
+
+            it("encodes literal leaves like the default encoder") {
+                val data =
+                    mapOf(
+                        "a" to listOf(1, true, Spaced.NEEDS_ESCAPING, Spaced.WITH_BODY, 5_000L),
+                        "b" to mapOf("c" to (-3).toShort(), "d" to Spaced.PLAIN),
+                    )
+                val defaults = EncodeOptions()
+                val delegating =
+                    EncodeOptions(
+                        encoder = { value, charset, format ->
+                            defaults.getEncoder(value, charset, format)
+                        }
+                    )
+
+                encode(data) shouldBe encode(data, delegating)
+                encode(data, EncodeOptions(encode = false)) shouldBe
+                    "a[0]=1&a[1]=true&a[2]=a b&a[3]=body&a[4]=5000&b[c]=-3&b[d]=PLAIN"
+            }
+
+            it("escapes '~' in enum constants under ISO-8859-1") {
+                val latin1 = EncodeOptions(charset = StandardCharsets.ISO_8859_1)
+
+                encode(mapOf("e" to Spaced.TILDE), latin1) shouldBe "e=a%7Eb"
+                encode(mapOf("e" to Spaced.TILDE)) shouldBe "e=a~b"
+            }
+        }
+    })
+
+private enum class Spaced {
+    PLAIN,
+    NEEDS_ESCAPING {
+        override fun toString(): String = "a b"
+    },
+    WITH_BODY {
+        override fun toString(): String = "body"
+    },
+    TILDE {
+        override fun toString(): String = "a~b"
+    },
+}
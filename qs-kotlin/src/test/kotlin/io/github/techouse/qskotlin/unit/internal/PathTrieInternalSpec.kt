@@ -0,0 +1,42 @@
+package io.github.techouse.qskotlin.unit.internal
+
+import io.github.techouse.qskotlin.internal.PathTrie
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.nulls.shouldBeNull
+import io.kotest.matchers.shouldBe
+
+class PathTrieInternalSpec :
+    DescribeSpec({
+        describe("PathTrie internals") {
+            it("splits dot and bracket segments") {
+                PathTrie.parse("a[b.c].d[*][0]") shouldBe listOf("a", "b.c", "d", "*", "0")
+                PathTrie.parse("[a].b") shouldBe listOf("a", "b")
+                PathTrie.parse("meta.**") shouldBe listOf("meta", "**")
+            }
+
+            it("collapses everything below a terminal node") {
+                val trie = PathTrie.compile(listOf("a.b", "a", "c.**", "c.d"))
+
+                trie.names shouldBe listOf("a", "c")
+                trie.child("a")!!.terminal shouldBe true
+                trie.child("c")!!.terminal shouldBe true
+                trie.child("a")!!.names shouldBe emptyList()
+            }
+
+            it("merges wildcard branches into exact siblings") {
+                val trie = PathTrie.compile(listOf("items[*].id", "items[1].title"))
+                val items = trie.child("items")!!
+
+                items.child("0") shouldBe items.any
+                items.child("1")!!.names shouldBe listOf("title", "id")
+                items.child("1")!!.child("id")!!.terminal shouldBe true
+                items.child("0")!!.child("title").shouldBeNull()
+            }
+
+            it("indexes the exact names that are list indices") {
+                val trie = PathTrie.compile(listOf("a", "3", "007", "-1", "10"))
+
+                trie.indices.toList() shouldBe listOf(3, 10)
+            }
+        }
+    })
@@ -0,0 +1,37 @@
+package io.github.techouse.qskotlin.unit.internal
+
+import io.github.techouse.qskotlin.internal.PrimitiveArrays
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+
+class PrimitiveArraysInternalSpec :
+    DescribeSpec({
+        describe("PrimitiveArrays internals") {
+            val arrays: List<Any> =
+                listOf(
+                    intArrayOf(0, -1, 1_023, 1_024, Int.MIN_VALUE),
+                    longArrayOf(Long.MAX_VALUE, 5),
+                    doubleArrayOf(1.5, -0.0, Double.NaN, 1e21, Double.NEGATIVE_INFINITY),
+                    floatArrayOf(2.5f, 1e-7f),
+                    shortArrayOf(Short.MIN_VALUE, 7),
+                    booleanArrayOf(true, false),
+                    charArrayOf('a', '&', 'ü'),
+                )
+
+            it("reads elements as their boxed toString()") {
+                for (array in arrays) {
+                    val boxed = PrimitiveArrays.boxed(array)
+
+                    PrimitiveArrays.size(array) shouldBe boxed.size
+                    PrimitiveArrays.texts(array) shouldBe boxed.map { it.toString() }
+                }
+            }
+
+            it("does not treat byte arrays or other values as primitive arrays") {
+                PrimitiveArrays.size(byteArrayOf(1)) shouldBe -1
+                PrimitiveArrays.size(arrayOf(1)) shouldBe -1
+                PrimitiveArrays.size(listOf(1)) shouldBe -1
+                PrimitiveArrays.size(null) shouldBe -1
+            }
+        }
+    })
@@ -0,0 +1,89 @@
+package io.github.techouse.qskotlin.unit.internal
+
+import io.github.techouse.qskotlin.encode
+import io.github.techouse.qskotlin.internal.Scratch
+import io.github.techouse.qskotlin.internal.Utils
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.matchers.types.shouldNotBeSameInstanceAs
+
+class ScratchInternalSpec :
+    DescribeSpec({
+        describe("Scratch builders") {
+            it("reuses the same builder on a thread and hands it out empty") {
+                val first = Scratch.withBuilder { it.append("abc") }
+                val second = Scratch.withBuilder { it }
+
+                second shouldBeSameInstanceAs first
+                second.length shouldBe 0
+            }
+
+            it("gives nested borrows distinct builders") {
+                Scratch.withBuilder { outer ->
+                    Scratch.withBuilder { inner -> inner shouldNotBeSameInstanceAs outer }
+                }
+            }
+
+            it("drops builders that grew beyond the retention cap") {
+                val huge = Scratch.withBuilder { it.append("x".repeat(64 * 1024)) }
+
+                Scratch.withBuilder { it shouldNotBeSameInstanceAs huge }
+            }
+
+            it("returns the builder when the block throws") {
+                val before = Scratch.withBuilder { it }
+                shouldThrow<IllegalStateException> { Scratch.withBuilder { error("boom") } }
+
+                Scratch.withBuilder { it shouldBeSameInstanceAs before }
+            }
+        }
+
+        describe("Scratch identity sets") {
+            it("reuses a released set and hands it out empty") {
+                val set = Scratch.borrowIdentitySet()
+                set.add(Any())
+                Scratch.releaseIdentitySet(set)
+
+                val again = Scratch.borrowIdentitySet()
+                again shouldBeSameInstanceAs set
+                again.size shouldBe 0
+                Scratch.releaseIdentitySet(again)
+            }
+
+            it("tracks identity, not equality") {
+                val set = Scratch.borrowIdentitySet()
+                set.add(String(charArrayOf('a'))) shouldBe true
+                set.add(String(charArrayOf('a'))) shouldBe true
+                set.size shouldBe 2
+                Scratch.releaseIdentitySet(set)
+            }
+
+            it("drops sets that grew beyond the retention cap") {
+                val set = Scratch.borrowIdentitySet()
+                repeat(2_000) { set.add(Any()) }
+                Scratch.releaseIdentitySet(set)
+
+                val next = Scratch.borrowIdentitySet()
+                next shouldNotBeSameInstanceAs set
+                Scratch.releaseIdentitySet(next)
+            }
+        }
+
+        describe("callers") {
+            it("returns plain values from Utils.encode without copying") {
+                val plain = "abc-DEF_123.~"
+                Utils.encode(plain) shouldBeSameInstanceAs plain
+                Utils.encode("a b") shouldBe "a%20b"
+            }
+
+            it("keeps encode output stable across repeated and nested use") {
+                val data = mapOf("a" to mapOf("b" to listOf("c d", "é")), "x" to "y")
+                val expected = "a%5Bb%5D%5B0%5D=c%20d&a%5Bb%5D%5B1%5D=%C3%A9&x=y"
+
+                repeat(3) { encode(data) shouldBe expected }
+                Scratch.withBuilder { encode(data) shouldBe expected }
+            }
+        }
+    })
@@ -0,0 +1,98 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.models.AccessLogDecoder
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentSkipListMap
+
+class AccessLogDecoderSpec :
+    DescribeSpec({
+        fun logFile(content: String): Path =
+            Files.createTempFile("access", ".log").also {
+                it.toFile().deleteOnExit()
+                Files.writeString(it, content)
+            }
+
+        describe("AccessLogDecoder") {
+            val lines =
+                (0 until 500).map {
+                    when (it % 4) {
+                        0 -> "10.0.0.$it - - \"GET /search?q=shoes&page=$it HTTP/1.1\" 200 512"
+                        1 -> "10.0.0.$it - - \"GET /health HTTP/1.1\" 200 2"
+                        2 -> "10.0.0.$it - - \"GET /p?a[b][c]=$it&a[b][d]=%E2%9C%93 HTTP/1.1\" 200"
+                        else -> "10.0.0.$it - - \"POST /x?list[]=1&list[]=2\r"
+                    }
+                }
+            val content = lines.joinToString("\n")
+            val file = logFile(content)
+
+            fun expected(): Map<Long, Map<String, Any?>> {
+                val out = sortedMapOf<Long, Map<String, Any?>>()
+                var offset = 0L
+                for (line in lines) {
+                    val start = line.indexOf('?')
+                    if (start >= 0) {
+                        val query = line.substring(start + 1).trimEnd('\r').substringBefore(' ')
+                        out[offset] = decode(query)
+                    }
+                    offset += line.toByteArray().size + 1
+                }
+                return out
+            }
+
+            it("decodes every query, keyed by line offset") {
+                val results = ConcurrentSkipListMap<Long, Map<String, Any?>>()
+
+                val stats =
+                    AccessLogDecoder().decode(file) { offset, query -> results[offset] = query }
+
+                results shouldBe expected()
+                stats.count shouldBe 375L
+            }
+
+            it("splits the file into line-aligned regions") {
+                val results = ConcurrentSkipListMap<Long, Map<String, Any?>>()
+
+                AccessLogDecoder(regionBytes = 100).decode(file) { offset, query ->
+                    results[offset] = query
+                }
+
+                results shouldBe expected()
+            }
+
+            it("delivers flat path tables") {
+                val results = ConcurrentSkipListMap<Long, Map<String, Any?>>()
+
+                AccessLogDecoder(regionBytes = 1_000).decodePathTables(file) { offset, table ->
+                    results[offset] = table.toMap()
+                }
+
+                results shouldBe expected()
+            }
+
+            it("uses a custom prefix and terminator") {
+                val custom = logFile("id=1 query=a=b&c=d|rest\nid=2\nquery=e[]=f")
+                val results = ConcurrentSkipListMap<Long, Map<String, Any?>>()
+
+                AccessLogDecoder(DecodeOptions(), prefix = "query=", terminator = "|")
+                    .decode(custom) { offset, query -> results[offset] = query }
+
+                results shouldBe
+                    mapOf(0L to mapOf("a" to "b", "c" to "d"), 29L to mapOf("e" to listOf("f")))
+            }
+
+            it("handles an empty file") {
+                AccessLogDecoder().decode(logFile("")) { _, _ -> }.count shouldBe 0L
+            }
+
+            it("rejects an empty prefix or terminator") {
+                shouldThrow<IllegalArgumentException> { AccessLogDecoder(prefix = "") }
+                shouldThrow<IllegalArgumentException> { AccessLogDecoder(terminator = "") }
+            }
+        }
+    })
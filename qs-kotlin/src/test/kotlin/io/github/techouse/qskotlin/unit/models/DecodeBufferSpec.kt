@@ -0,0 +1,107 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.decodeInto
+import io.github.techouse.qskotlin.enums.Duplicates
+import io.github.techouse.qskotlin.models.DecodeBuffer
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.github.techouse.qskotlin.models.Delimiter
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+
+class DecodeBufferSpec :
+    DescribeSpec({
+        describe("DecodeBuffer") {
+            val queries =
+                listOf(
+                    "a=1&b=2",
+                    "a=3&b=4",
+                    "a=3&b=",
+                    "a=3&b",
+                    "a[b][c]=d&a[b][e]=f&g[]=h&g[]=i",
+                    "a[b][c]=x%20y&a[b][e]=f+g&g[]=%E2%9C%93&g[]=i",
+                    "a=1&a=2&a=3",
+                    "a=4&a=5&a=6",
+                    "a[0]=x&a[1]=y&a[3]=z",
+                    "a[0]=p&a[1]=q&a[3]=r",
+                    "a[b=c]=d&e=f=g",
+                    "a[b=c]=h&e=i=j",
+                    "?x=1&&y[]=&z[a][b][c][d][e][f]=deep",
+                    "?x=2&&y[]=&z[a][b][c][d][e][f]=deeper",
+                    "a%5Bb%5D=c&d=e",
+                    "=x&a=b",
+                    "=y&a=c",
+                    "a=b&a[c]=d",
+                    "a=e&a[c]=f",
+                )
+            val options =
+                listOf(
+                    DecodeOptions(),
+                    DecodeOptions(ignoreQueryPrefix = true, strictNullHandling = true),
+                    DecodeOptions(allowEmptyLists = true, duplicates = Duplicates.LAST),
+                    DecodeOptions(duplicates = Duplicates.FIRST, listLimit = 1, depth = 2),
+                    DecodeOptions(parseLists = false, allowDots = true),
+                    DecodeOptions(delimiter = Delimiter.SEMICOLON),
+                    DecodeOptions(comma = true),
+                )
+
+            it("always returns what decode returns") {
+                for (option in options) {
+                    val buffer = DecodeBuffer(option)
+                    repeat(2) {
+                        for (query in queries) {
+                            decodeInto(query, buffer) shouldBe decode(query, option)
+                        }
+                    }
+                }
+            }
+
+            it("refills the previous result in place for the same shape") {
+                val buffer = DecodeBuffer()
+
+                val first = decodeInto("a[b]=1&c[]=2&c[]=3", buffer)
+                val second = decodeInto("a[b]=4&c[]=5&c[]=6", buffer)
+
+                second shouldBeSameInstanceAs first
+                second shouldBe mapOf("a" to mapOf("b" to "4"), "c" to listOf("5", "6"))
+                buffer.recycledCount shouldBe 1
+                buffer.rebuildCount shouldBe 1
+            }
+
+            it("rebuilds when the shape changes") {
+                val buffer = DecodeBuffer()
+
+                decodeInto("a=1&b=2", buffer)
+                decodeInto("a=1&c=2", buffer) shouldBe mapOf("a" to "1", "c" to "2")
+                decodeInto("a=1&c=", buffer) shouldBe mapOf("a" to "1", "c" to "")
+
+                buffer.recycledCount shouldBe 0
+                buffer.rebuildCount shouldBe 3
+            }
+
+            it("decodes normally when options make values shape-dependent") {
+                val buffer = DecodeBuffer(DecodeOptions(comma = true))
+
+                decodeInto("a=1,2", buffer) shouldBe mapOf("a" to listOf("1", "2"))
+                decodeInto("a=3", buffer) shouldBe mapOf("a" to "3")
+                buffer.recycledCount shouldBe 0
+            }
+
+            it("matches decode when a scalar merges into a map as a key") {
+                val options = DecodeOptions(strictMerge = false)
+                val buffer = DecodeBuffer(options)
+
+                for (query in listOf("a[b]=c&a=d", "a[b]=c&a=e", "a[b]=c&a=d")) {
+                    decodeInto(query, buffer) shouldBe decode(query, options)
+                }
+                buffer.recycledCount shouldBe 0
+            }
+
+            it("returns an empty map for null or empty input") {
+                val buffer = DecodeBuffer()
+                decodeInto(null, buffer) shouldBe emptyMap()
+                decodeInto("", buffer) shouldBe emptyMap()
+            }
+        }
+    })
@@ -0,0 +1,122 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.models.DecodeCache
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class DecodeCacheSpec :
+    DescribeSpec({
+        describe("DecodeCache") {
+            it("rejects invalid arguments") {
+                shouldThrow<IllegalArgumentException> { DecodeCache(0) }
+                shouldThrow<IllegalArgumentException> { DecodeCache(1024, 0) }
+                DecodeCache(1024, 3).stripes shouldBe 4
+            }
+
+            it("returns the decoded Map and serves repeats from the cache") {
+                val cache = DecodeCache()
+                val first = cache.decode("a[b]=c&d=e")
+                val second = cache.decode("a[b]=c&d=e")
+
+                first shouldBe decode("a[b]=c&d=e")
+                second shouldBeSameInstanceAs first
+                cache.hitCount shouldBe 1
+                cache.missCount shouldBe 1
+                cache.size shouldBe 1
+                cache.weightedSize shouldBeGreaterThan 0
+            }
+
+            it("keys entries by options identity") {
+                val cache = DecodeCache()
+                val options = DecodeOptions(allowDots = true)
+
+                cache.decode("a.b=c", options) shouldBe mapOf("a" to mapOf("b" to "c"))
+                cache.decode("a.b=c", DecodeOptions(allowDots = true))
+                cache.decode("a.b=c") shouldBe mapOf("a.b" to "c")
+
+                cache.missCount shouldBe 3
+                cache.decode("a.b=c", options)
+                cache.hitCount shouldBe 1
+            }
+
+            it("returns deeply immutable results") {
+                val cache = DecodeCache()
+
+                @Suppress("UNCHECKED_CAST")
+                val result = cache.decode("a[b][]=c&a[b][]=d") as MutableMap<String, Any?>
+                @Suppress("UNCHECKED_CAST")
+                val nested = result["a"] as MutableMap<String, Any?>
+                @Suppress("UNCHECKED_CAST")
+                val list = nested["b"] as MutableList<Any?>
+
+                shouldThrow<UnsupportedOperationException> { result["x"] = "y" }
+                shouldThrow<UnsupportedOperationException> { nested.clear() }
+                shouldThrow<UnsupportedOperationException> { list.add("e") }
+            }
+
+            it("evicts least recently used entries to stay within budget") {
+                val cache = DecodeCache(maxBytes = 2_048, stripes = 1)
+
+                repeat(100) { i -> cache.decode("key$i=value$i") }
+
+                cache.evictionCount shouldBeGreaterThan 0
+                cache.weightedSize shouldBeGreaterThan 0
+                (cache.weightedSize <= 2_048) shouldBe true
+
+                cache.decode("key99=value99")
+                cache.hitCount shouldBe 1
+            }
+
+            it("does not cache results larger than a segment") {
+                val cache = DecodeCache(maxBytes = 64, stripes = 1)
+
+                cache.decode("a=b") shouldBe mapOf("a" to "b")
+                cache.size shouldBe 0
+            }
+
+            it("handles null and empty input without counting") {
+                val cache = DecodeCache()
+
+                cache.decode(null) shouldBe emptyMap()
+                cache.decode("") shouldBe emptyMap()
+                cache.missCount shouldBe 0
+            }
+
+            it("is safe to use from many threads") {
+                val cache = DecodeCache()
+                val pool = Executors.newFixedThreadPool(8)
+                try {
+                    val futures =
+                        (0 until 1_000).map { i ->
+                            pool.submit<Map<String, Any?>> { cache.decode("a[${i % 10}]=b") }
+                        }
+                    futures.forEachIndexed { i, future ->
+                        future.get() shouldBe decode("a[${i % 10}]=b")
+                    }
+                } finally {
+                    pool.shutdown()
+                    pool.awaitTermination(10, TimeUnit.SECONDS)
+                }
+
+                cache.hitCount + cache.missCount shouldBe 1_000
+                cache.size shouldBe 10
+            }
+
+            it("clear drops entries and statistics") {
+                val cache = DecodeCache()
+                cache.decode("a=b")
+                cache.clear()
+
+                cache.size shouldBe 0
+                cache.missCount shouldBe 0
+                cache.hitRate shouldBe 0.0
+            }
+        }
+    })
@@ -0,0 +1,88 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.encode
+import io.github.techouse.qskotlin.models.EncodeCache
+import io.github.techouse.qskotlin.models.EncodeOptions
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+
+class EncodeCacheSpec :
+    DescribeSpec({
+        describe("EncodeCache") {
+            it("rejects a non-positive size bound") {
+                shouldThrow<IllegalArgumentException> { EncodeCache(0) }
+            }
+
+            it("caches results for marked inputs") {
+                val cache = EncodeCache()
+                val data = cache.markImmutable(mapOf("a" to mapOf("b" to listOf("c", "d"))))
+
+                val first = cache.encode(data)
+                val second = cache.encode(data)
+
+                first shouldBe encode(data)
+                second shouldBeSameInstanceAs first
+                cache.hitCount shouldBe 1
+                cache.missCount shouldBe 1
+                cache.size shouldBe 1
+            }
+
+            it("does not cache inputs that were not marked") {
+                val cache = EncodeCache()
+                val data = mutableMapOf<String, Any?>("a" to "b")
+
+                cache.encode(data) shouldBe "a=b"
+                data["a"] = "c"
+                cache.encode(data) shouldBe "a=c"
+
+                cache.isMarkedImmutable(data) shouldBe false
+                cache.size shouldBe 0
+                cache.missCount shouldBe 0
+            }
+
+            it("keys by input identity and options identity") {
+                val cache = EncodeCache()
+                val options = EncodeOptions(encode = false)
+                val data = cache.markImmutable(mapOf("a" to "b c"))
+                val equal = cache.markImmutable(mapOf("a" to "b c"))
+
+                cache.encode(data, options) shouldBe "a=b c"
+                cache.encode(equal, options)
+                cache.encode(data, EncodeOptions(encode = false))
+                cache.encode(data) shouldBe "a=b%20c"
+
+                cache.missCount shouldBe 4
+                cache.encode(data, options)
+                cache.hitCount shouldBe 1
+            }
+
+            it("evicts least recently used entries beyond the size bound") {
+                val cache = EncodeCache(maxEntries = 2)
+                val inputs = (0 until 5).map { cache.markImmutable(mapOf("k$it" to it)) }
+
+                inputs.forEach { cache.encode(it) }
+
+                cache.size shouldBe 2
+                cache.evictionCount shouldBe 3
+                cache.encode(inputs[4]) shouldBe "k4=4"
+                cache.hitCount shouldBe 1
+            }
+
+            it("passes null through") {
+                EncodeCache().encode(null) shouldBe ""
+            }
+
+            it("clear drops entries, marks and statistics") {
+                val cache = EncodeCache()
+                val data = cache.markImmutable(listOf("a"))
+                cache.encode(data)
+                cache.clear()
+
+                cache.size shouldBe 0
+                cache.missCount shouldBe 0
+                cache.isMarkedImmutable(data) shouldBe false
+            }
+        }
+    })
@@ -1,7 +1,9 @@
 package io.github.techouse.qskotlin.unit.models
 
+import io.github.techouse.qskotlin.models.AllowlistFilter
 import io.github.techouse.qskotlin.models.FunctionFilter
 import io.github.techouse.qskotlin.models.IterableFilter
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.DescribeSpec
 import io.kotest.matchers.collections.shouldContainExactly
 import io.kotest.matchers.shouldBe
@@ -29,5 +31,13 @@ class FilterSpec :
                 val filter = IterableFilter(customIterable)
                 filter.iterable.toList() shouldBe backing
             }
+            it("AllowlistFilter keeps its patterns and rejects malformed ones") {
+                AllowlistFilter.of("a.b", "c[*]").patterns shouldBe listOf("a.b", "c[*]")
+                AllowlistFilter(listOf("x")).patterns shouldBe listOf("x")
+
+                for (pattern in listOf("", ".a", "a..b", "a.", "a[]", "a[b", "a.**.b")) {
+                    shouldThrow<IllegalArgumentException> { AllowlistFilter(pattern) }
+                }
+            }
         }
     })
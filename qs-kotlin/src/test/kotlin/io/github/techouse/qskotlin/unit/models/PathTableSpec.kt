@@ -0,0 +1,106 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.decodePathTable
+import io.github.techouse.qskotlin.enums.Duplicates
+import io.github.techouse.qskotlin.fixtures.data.EndToEndTestCases
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+
+class PathTableSpec :
+    DescribeSpec({
+        describe("decodePathTable") {
+            it("returns rows in input order without nesting") {
+                val table = decodePathTable("a[b][0]=c&d=e&a[b][1]=f")
+
+                table.size shouldBe 3
+                table.keys shouldBe listOf("a[b][0]", "d", "a[b][1]")
+                table.paths shouldBe
+                    listOf(listOf("a", "b", "0"), listOf("d"), listOf("a", "b", "1"))
+                table.values shouldBe listOf("c", "e", "f")
+            }
+
+            it("represents list appends as empty segments and combines duplicates") {
+                val table = decodePathTable("a[]=b&a[]=c&x=1&x=2")
+
+                table.paths shouldBe listOf(listOf("a", ""), listOf("x"))
+                table.values shouldBe listOf(listOf("b", "c"), listOf("1", "2"))
+            }
+
+            it("splits dot notation only when allowDots is enabled") {
+                decodePathTable("a.b=c").path(0) shouldBe listOf("a.b")
+                decodePathTable("a.b=c", DecodeOptions(allowDots = true)).path(0) shouldBe
+                    listOf("a", "b")
+            }
+
+            it("keeps the depth remainder as a single trailing segment") {
+                val table = decodePathTable("a[b][c][d]=e", DecodeOptions(depth = 1))
+
+                table.path(0) shouldBe listOf("a", "b", "[c][d]")
+            }
+
+            it("forEach visits every row") {
+                val seen = mutableListOf<Pair<List<String>, Any?>>()
+                decodePathTable("a=1&b[c]=2").forEach { path, value -> seen += path to value }
+
+                seen shouldBe listOf(listOf("a") to "1", listOf("b", "c") to "2")
+            }
+
+            it("returns an empty table for null or empty input") {
+                decodePathTable(null).isEmpty() shouldBe true
+                decodePathTable("").toMap() shouldBe emptyMap()
+            }
+
+            describe("toMap") {
+                it("matches decode for the end-to-end fixtures") {
+                    EndToEndTestCases.forEach { testCase ->
+                        decodePathTable(testCase.encoded).toMap() shouldBe decode(testCase.encoded)
+                    }
+                }
+
+                it("matches decode across list, overflow and duplicate options") {
+                    val inputs =
+                        listOf(
+                            "a[0]=b&a[1]=c&a[25]=d",
+                            "a[]=b&a[]=c&a[5]=d&a[x]=y",
+                            "a=b&a[c]=d",
+                            "a[b]=c&a=d",
+                            "a=1,2,3&b[]=4,5",
+                            "a[1]=b&a[3]=c",
+                            "a.b%2Ec=d&a[e]=f",
+                        )
+                    val options =
+                        listOf(
+                            DecodeOptions(),
+                            DecodeOptions(listLimit = 1),
+                            DecodeOptions(comma = true),
+                            DecodeOptions(parseLists = false),
+                            DecodeOptions(allowSparseLists = true),
+                            DecodeOptions(duplicates = Duplicates.LAST),
+                            DecodeOptions(decodeDotInKeys = true),
+                            DecodeOptions(strictMerge = false),
+                        )
+
+                    for (input in inputs) {
+                        for (option in options) {
+                            decodePathTable(input, option).toMap() shouldBe decode(input, option)
+                        }
+                    }
+                }
+
+                it("is repeatable and leaves the table untouched") {
+                    val options = DecodeOptions(listLimit = 2)
+                    val table = decodePathTable("a=1&a=2&a=3&a[]=4", options)
+                    val snapshot = table.values.toString()
+
+                    val first = table.toMap()
+                    val second = table.toMap()
+
+                    first shouldBe decode("a=1&a=2&a=3&a[]=4", options)
+                    second shouldBe first
+                    table.values.toString() shouldBe snapshot
+                }
+            }
+        }
+    })
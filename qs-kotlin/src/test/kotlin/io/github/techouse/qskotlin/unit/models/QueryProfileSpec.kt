@@ -0,0 +1,83 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.enums.Sentinel
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.github.techouse.qskotlin.models.Delimiter
+import io.github.techouse.qskotlin.models.QueryProfile
+import io.github.techouse.qskotlin.profile
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+
+class QueryProfileSpec :
+    DescribeSpec({
+        describe("profile") {
+            it("reports counts, depth, index and lengths") {
+                profile("a[b][c]=d&e[25]=fgh&ij") shouldBe
+                    QueryProfile(
+                        length = 22,
+                        parameterCount = 3,
+                        maxDepth = 2,
+                        maxIndex = 25,
+                        longestKey = 7,
+                        longestValue = 3,
+                        charsetSentinel = null,
+                    )
+            }
+
+            it("returns an empty profile for null or empty input") {
+                profile(null) shouldBe QueryProfile(0, 0, 0, -1, 0, 0, null)
+                profile("") shouldBe QueryProfile(0, 0, 0, -1, 0, 0, null)
+            }
+
+            it("ignores empty segments and honors ignoreQueryPrefix") {
+                val profile = profile("?a=b&&c=d&", DecodeOptions(ignoreQueryPrefix = true))
+
+                profile.parameterCount shouldBe 2
+                profile.longestKey shouldBe 1
+            }
+
+            it("splits on ']=' before '=' like decode") {
+                val profile = profile("a[b=c]=d")
+
+                profile.longestKey shouldBe 6
+                profile.longestValue shouldBe 1
+            }
+
+            it("treats percent-encoded brackets as brackets") {
+                val profile = profile("a%5Bb%5D%5B7%5D=c")
+
+                profile.maxDepth shouldBe 2
+                profile.maxIndex shouldBe 7
+            }
+
+            it("ignores empty and non-numeric brackets for maxIndex") {
+                profile("a[]=b&a[x1]=c&a[[1]]=d").maxIndex shouldBe -1
+            }
+
+            it("counts leading bracket groups as the root") {
+                profile("[a][b]=c").maxDepth shouldBe 1
+            }
+
+            it("counts dot segments only when allowDots is enabled") {
+                profile("a.b.c=d").maxDepth shouldBe 0
+                profile("a.b.c=d", DecodeOptions(allowDots = true)).maxDepth shouldBe 2
+            }
+
+            it("saturates very large indices") {
+                profile("a[99999999999999]=b").maxIndex shouldBe Int.MAX_VALUE
+            }
+
+            it("detects charset sentinels") {
+                profile("utf8=%E2%9C%93&a=b").charsetSentinel shouldBe Sentinel.CHARSET
+                profile("a=b&utf8=%26%2310003%3B").charsetSentinel shouldBe Sentinel.ISO
+                profile("utf8=foo&a=b").hasCharsetSentinel shouldBe false
+            }
+
+            it("uses custom string and regex delimiters") {
+                profile("a=b;c=d", DecodeOptions(delimiter = Delimiter.SEMICOLON))
+                    .parameterCount shouldBe 2
+                profile("a=b; c=d;;e=f", DecodeOptions(delimiter = Delimiter.regex(";\\s*")))
+                    .parameterCount shouldBe 3
+            }
+        }
+    })
@@ -0,0 +1,121 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.decode
+import io.github.techouse.qskotlin.fixtures.data.EndToEndTestCases
+import io.github.techouse.qskotlin.models.DecodeOptions
+import io.github.techouse.qskotlin.models.StringPool
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import java.nio.charset.StandardCharsets
+
+class StringPoolSpec :
+    DescribeSpec({
+        describe("StringPool") {
+            it("rounds capacity up to a power of two") {
+                StringPool(1).capacity shouldBe 1
+                StringPool(3).capacity shouldBe 4
+                StringPool(1024).capacity shouldBe 1024
+                StringPool(1025).capacity shouldBe 2048
+            }
+
+            it("rejects invalid arguments") {
+                shouldThrow<IllegalArgumentException> { StringPool(0) }
+                shouldThrow<IllegalArgumentException> { StringPool(16, -1) }
+            }
+
+            it("returns the same instance for equal slices") {
+                val pool = StringPool()
+                val first = pool.intern("xpagex", 1, 5)
+                val second = pool.intern(StringBuilder("page"))
+
+                first shouldBe "page"
+                second shouldBeSameInstanceAs first
+                pool.hitCount shouldBe 1
+                pool.missCount shouldBe 1
+                pool.hitRate shouldBe 0.5
+            }
+
+            it("bypasses strings longer than maxLength") {
+                val pool = StringPool(16, maxLength = 3)
+
+                pool.intern("abcd") shouldBe "abcd"
+                pool.size shouldBe 0
+                pool.missCount shouldBe 0
+            }
+
+            it("replaces colliding entries in a single slot") {
+                val pool = StringPool(1)
+                pool.intern("a")
+                pool.intern("b")
+
+                pool.size shouldBe 1
+                pool.missCount shouldBe 2
+            }
+
+            it("clear drops entries and statistics") {
+                val pool = StringPool()
+                pool.intern("a")
+                pool.intern("a")
+                pool.clear()
+
+                pool.size shouldBe 0
+                pool.hitCount shouldBe 0
+                pool.hitRate shouldBe 0.0
+            }
+        }
+
+        describe("decode with a string pool") {
+            it("shares key and value instances across calls") {
+                val options = DecodeOptions(stringPool = StringPool())
+
+                val first = decode("sort=asc&page=1", options)
+                val second = decode("page=1&sort=asc", options)
+
+                second.keys.first { it == "sort" } shouldBeSameInstanceAs
+                    first.keys.first { it == "sort" }
+                second["sort"] shouldBeSameInstanceAs first["sort"]
+                second["page"] shouldBeSameInstanceAs first["page"]
+            }
+
+            it("pools decoded tokens, comma elements and nested segments") {
+                val options = DecodeOptions(comma = true, stringPool = StringPool())
+
+                val first = decode("a%20b=x%2By&c[d]=e,f", options)
+                val second = decode("a%20b=x%2By&c[d]=e,f", options)
+
+                second["a b"] shouldBeSameInstanceAs first["a b"]
+                @Suppress("UNCHECKED_CAST")
+                val nested = second["c"] as Map<String, Any?>
+                @Suppress("UNCHECKED_CAST")
+                val list = nested["d"] as List<Any?>
+                @Suppress("UNCHECKED_CAST")
+                list[0] shouldBeSameInstanceAs
+                    ((first["c"] as Map<String, Any?>)["d"] as List<Any?>)[0]
+                nested.keys.first() shouldBeSameInstanceAs
+                    (first["c"] as Map<*, *>).keys.first()
+            }
+
+            it("matches decode without a pool") {
+                val options = DecodeOptions(stringPool = StringPool(64))
+                EndToEndTestCases.forEach { testCase ->
+                    decode(testCase.encoded, options) shouldBe decode(testCase.encoded)
+                }
+
+                val latin1 = DecodeOptions(charset = StandardCharsets.ISO_8859_1)
+                decode("a=%A2+b&c[]=d", latin1.copy(stringPool = StringPool())) shouldBe
+                    decode("a=%A2+b&c[]=d", latin1)
+            }
+
+            it("still applies a custom decoder to plain tokens") {
+                val options =
+                    DecodeOptions(
+                        decoder = { value, _, _ -> value?.uppercase() },
+                        stringPool = StringPool(),
+                    )
+
+                decode("a=b", options) shouldBe mapOf("A" to "B")
+            }
+        }
+    })
@@ -0,0 +1,92 @@
+package io.github.techouse.qskotlin.unit.models
+
+import io.github.techouse.qskotlin.encode
+import io.github.techouse.qskotlin.enums.ListFormat
+import io.github.techouse.qskotlin.models.EncodeOptions
+import io.github.techouse.qskotlin.models.TypeWriters
+import io.kotest.core.spec.style.DescribeSpec
+import io.kotest.matchers.shouldBe
+import java.math.BigDecimal
+import java.nio.file.Path
+import java.time.LocalDateTime
+import java.util.UUID
+
+class TypeWritersSpec :
+    DescribeSpec({
+        describe("TypeWriters") {
+            val uuid = UUID.fromString("123e4567-e89b-12d3-a456-426614174000")
+            val writers =
+                TypeWriters.builder()
+                    .register<BigDecimal> { value, out -> out.append(value.toPlainString()) }
+                    .register<UUID> { value, out -> out.append(value.toString().take(8)) }
+                    .register<Path> { value, out -> out.append("path:").append(value) }
+                    .build()
+            val options = EncodeOptions(typeWriters = writers)
+
+            it("writes registered types in flat, nested and list positions") {
+                val amount = BigDecimal("1E+3")
+
+                encode(mapOf("a" to amount, "b" to uuid), options) shouldBe "a=1000&b=123e4567"
+                encode(mapOf("a" to mapOf("b" to amount, "c" to 1)), options) shouldBe
+                    "a%5Bb%5D=1000&a%5Bc%5D=1"
+                encode(
+                    mapOf("a" to listOf(amount, uuid)),
+                    options.copy(listFormat = ListFormat.COMMA),
+                ) shouldBe "a=1000%2C123e4567"
+                encode(mapOf("a" to amount)) shouldBe "a=1E%2B3"
+            }
+
+            it("percent-encodes written text unless encoding is disabled") {
+                val path = Path.of("x y")
+
+                encode(mapOf("p" to path), options) shouldBe "p=path%3Ax%20y"
+                encode(mapOf("p" to path), options.copy(encode = false)) shouldBe "p=path:x y"
+                encode(
+                    mapOf("p" to path),
+                    options.copy(encoder = { value, _, _ -> "<$value>" }),
+                ) shouldBe "<p>=<path:x y>"
+            }
+
+            it("writes the leaf of a single-key chain, even a registered Map") {
+                val tagged =
+                    TypeWriters.builder()
+                        .register<BigDecimal> { value, out -> out.append(value.toPlainString()) }
+                        .register<Tagged> { value, out -> out.append("tag:").append(value.tag) }
+                        .build()
+                val raw = EncodeOptions(typeWriters = tagged, encode = false)
+
+                encode(mapOf("a" to mapOf("b" to BigDecimal("1E+3"))), raw) shouldBe "a[b]=1000"
+                encode(mapOf("a" to mapOf("b" to Tagged("t"))), raw) shouldBe "a[b]=tag:t"
+                encode(mapOf("a" to Tagged("t")), raw) shouldBe "a=tag:t"
+                val chain = mapOf("a" to mapOf("b" to Tagged("t")))
+                encode(chain, EncodeOptions(encode = false)) shouldBe "a[b][x]=t"
+            }
+
+            it("prefers the most specific registration") {
+                val numbers =
+                    TypeWriters.builder()
+                        .register<Number> { _, out -> out.append("number") }
+                        .register(Int::class.java) { value, out -> out.append("int").append(value) }
+                        .register<CharSequence> { value, out -> out.append(value.length) }
+                        .build()
+
+                numbers.handles(Int::class.javaObjectType) shouldBe true
+                numbers.handles(String::class.java) shouldBe true
+                numbers.handles(LocalDateTime::class.java) shouldBe false
+                encode(
+                    mapOf("i" to 7, "l" to 7L, "s" to StringBuilder("abc")),
+                    EncodeOptions(typeWriters = numbers),
+                ) shouldBe "i=int7&l=number&s=3"
+            }
+
+            it("lists registered types in registration order") {
+                writers.types.toList() shouldBe
+                    listOf(BigDecimal::class.java, UUID::class.java, Path::class.java)
+            }
+        }
+    })
+
+private class Tagged(val tag: String) : kotlin.collections.AbstractMap<String, Any?>() {
+    override val entries: Set<Map.Entry<String, Any?>>
+        get() = mapOf<String, Any?>("x" to tag).entries
+}